@@ -1,12 +1,15 @@
 package com.nekohit.neo.contract;
 
 import com.nekohit.neo.helper.Pair;
+import com.nekohit.neo.helper.StorageCursor;
+import com.nekohit.neo.helper.Utils;
 import io.neow3j.devpack.Runtime;
 import io.neow3j.devpack.*;
 import io.neow3j.devpack.annotations.*;
 import io.neow3j.devpack.constants.CallFlags;
 import io.neow3j.devpack.constants.FindOptions;
 import io.neow3j.devpack.contracts.ContractManagement;
+import io.neow3j.devpack.contracts.LedgerContract;
 import io.neow3j.devpack.events.Event3Args;
 
 import static io.neow3j.devpack.StringLiteralHelper.addressToScriptHash;
@@ -34,12 +37,36 @@ public class CatToken {
     @DisplayName("Transfer")
     private static Event3Args<Hash160, Hash160, Integer> onTransfer;
 
+    // owner, spender, amount
+    @DisplayName("Approval")
+    private static Event3Args<Hash160, Hash160, Integer> onApproval;
+
     private static final int DECIMALS = 2;
     private static final ByteString ASSET_PREFIX = new ByteString("asset");
     private static final String TOTAL_SUPPLY_KEY = "totalSupply";
     private static final String SYMBOL = "CAT";
     private static final StorageContext sc = Storage.getStorageContext();
     private static final StorageMap assetMap = sc.createMap(ASSET_PREFIX);
+    // Balance checkpoints, key: account + index (4 bytes), value: block index (4 bytes) + balance
+    // The total supply ones use an empty account
+    private static final StorageMap checkpointMap = sc.createMap("cp");
+    // Key: account, value: count of checkpoints
+    private static final StorageMap checkpointCountMap = sc.createMap("cc");
+    private static final int CHECKPOINT_INDEX_LENGTH = 4;
+    private static final int BLOCK_INDEX_LENGTH = 4;
+    // Count of accounts with non-zero balance
+    private static final String HOLDER_COUNT_KEY = "holderCount";
+    // Top holders, biggest first, each entry is account (20 bytes) + balance (8 bytes)
+    private static final String TOP_HOLDERS_KEY = "topHolders";
+    // Balance of the last top holder, 0 if the list is not full
+    private static final String TOP_HOLDER_MIN_KEY = "topHolderMin";
+    // Set once the holders before the stats are counted by initHolderStats
+    private static final String HOLDER_STATS_INIT_KEY = "holderStatsInit";
+    private static final int TOP_HOLDER_SIZE = 10;
+    private static final int HASH160_LENGTH = 20;
+    private static final int TOP_HOLDER_BALANCE_LENGTH = 8;
+    // Key: owner + spender, value: amount the spender can still transfer
+    private static final StorageMap allowanceMap = sc.createMap("al");
 
     @Safe
     public static String symbol() {
@@ -62,14 +89,96 @@ public class CatToken {
         assert Runtime.checkWitness(from) || from == Runtime.getCallingScriptHash()
                 : "Invalid sender signature. The sender of the tokens needs to be the signing account.";
 
-        if (from != to && amount != 0) {
-            deductFromBalance(from, amount);
-            addToBalance(to, amount);
+        doTransfer(from, to, amount, data);
+        return true;
+    }
+
+    /**
+     * Allow the spender to transfer at most amount from the owner by
+     * {@link #transferFrom(Hash160, Hash160, Hash160, int, Object)}.
+     * The old allowance is replaced, 0 revokes it.
+     */
+    public static boolean approve(Hash160 owner, Hash160 spender, int amount) {
+        assert Hash160.isValid(owner) && Hash160.isValid(spender) : "Owner or spender is not a valid address.";
+        assert amount >= 0 : "The approve amount was negative.";
+        assert Runtime.checkWitness(owner) || owner == Runtime.getCallingScriptHash()
+                : "Invalid owner signature. The owner of the tokens needs to be the signing account.";
+
+        ByteString key = owner.toByteString().concat(spender.toByteString());
+        if (amount == 0) {
+            allowanceMap.delete(key);
+        } else {
+            allowanceMap.put(key, amount);
         }
+        onApproval.fire(owner, spender, amount);
+        return true;
+    }
 
-        onTransfer.fire(from, to, amount);
-        if (ContractManagement.getContract(to) != null) {
-            Contract.call(to, "onNEP17Payment", CallFlags.All, new Object[]{from, amount, data});
+    @Safe
+    public static int allowance(Hash160 owner, Hash160 spender) {
+        assert Hash160.isValid(owner) && Hash160.isValid(spender) : "Owner or spender is not a valid address.";
+        return getAllowance(owner.toByteString().concat(spender.toByteString()));
+    }
+
+    /**
+     * Transfer the approved tokens of from, signed by the spender.
+     * Same as {@link #transfer(Hash160, Hash160, int, Object)} otherwise, thus
+     * a contract like WCAContract sees the payment coming from the owner.
+     */
+    public static boolean transferFrom(Hash160 spender, Hash160 from, Hash160 to, int amount, Object data) {
+        assert Hash160.isValid(spender) : "Spender address is not a valid address.";
+        assert Hash160.isValid(from) && Hash160.isValid(to) : "From or To address is not a valid address.";
+        assert amount >= 0 : "The transfer amount was negative.";
+        assert Runtime.checkWitness(spender) || spender == Runtime.getCallingScriptHash()
+                : "Invalid spender signature. The spender needs to be the signing account.";
+
+        ByteString key = from.toByteString().concat(spender.toByteString());
+        int allowance = getAllowance(key);
+        assert allowance >= amount : "Insufficient allowance.";
+        // update the allowance before calling the receiver
+        if (allowance == amount) {
+            allowanceMap.delete(key);
+        } else {
+            allowanceMap.put(key, allowance - amount);
+        }
+
+        doTransfer(from, to, amount, data);
+        return true;
+    }
+
+    /**
+     * Transfer to multiple recipients in one call.
+     * The sender is checked and debited once, then each recipient is credited,
+     * gets a Transfer event and, if it's a contract, the onNEP17Payment callback.
+     */
+    public static boolean transferMany(Hash160 from, Hash160[] to, int[] amounts, Object data) {
+        assert Hash160.isValid(from) : "From address is not a valid address.";
+        assert to.length == amounts.length : "To and amounts must have the same length.";
+        assert Runtime.checkWitness(from) || from == Runtime.getCallingScriptHash()
+                : "Invalid sender signature. The sender of the tokens needs to be the signing account.";
+
+        int total = 0;
+        for (int i = 0; i < to.length; i++) {
+            assert Hash160.isValid(to[i]) : "To address is not a valid address.";
+            assert amounts[i] >= 0 : "The transfer amount was negative.";
+            if (from != to[i]) {
+                total += amounts[i];
+            }
+        }
+        if (total != 0) {
+            deductFromBalance(from, total);
+        }
+        for (int i = 0; i < to.length; i++) {
+            if (from != to[i] && amounts[i] != 0) {
+                addToBalance(to[i], amounts[i]);
+            }
+        }
+
+        for (int i = 0; i < to.length; i++) {
+            onTransfer.fire(from, to[i], amounts[i]);
+            if (ContractManagement.getContract(to[i]) != null) {
+                Contract.call(to[i], "onNEP17Payment", CallFlags.All, new Object[]{from, amounts[i], data});
+            }
         }
 
         return true;
@@ -81,6 +190,45 @@ public class CatToken {
         return getBalance(account);
     }
 
+    /**
+     * Get the balance of the account at the end of the given block.
+     * Blocks before the checkpoints are introduced give the balance at that time.
+     */
+    @Safe
+    public static int balanceOfAt(Hash160 account, int blockIndex) {
+        assert Hash160.isValid(account) : "Argument is not a valid address.";
+        Integer value = getCheckpointAt(account.toByteString(), blockIndex);
+        // never changed since the checkpoints are introduced
+        return value == null ? getBalance(account) : value;
+    }
+
+    /**
+     * Same as {@link #balanceOfAt(Hash160, int)}, but for the total supply.
+     */
+    @Safe
+    public static int totalSupplyAt(int blockIndex) {
+        Integer value = getCheckpointAt(new ByteString(new byte[0]), blockIndex);
+        return value == null ? getTotalSupply() : value;
+    }
+
+    /**
+     * Get the count of holders and the top holders, biggest first.
+     * The top holders are approximate: a holder gets in when its balance changes
+     * to more than the last one, so holders not moving since then may be missing.
+     *
+     * @return Pair(holder count, list of Pair(account, balance)).
+     */
+    @Safe
+    public static Pair<Integer, List<Pair<Hash160, Integer>>> holderStats() {
+        Integer count = Storage.getInteger(sc, HOLDER_COUNT_KEY);
+        return new Pair<>(count == null ? 0 : count, getTopHolders());
+    }
+
+    /**
+     * Mint CAT with the USD token. By default, all of it goes to the sender.
+     * The data can also be an array of [recipient, catAmount] pairs to mint to
+     * them directly, the amounts must sum up to usdAmount / EXCHANGE_RATE.
+     */
     @OnNEP17Payment
     public static void onPayment(Hash160 from, int usdAmount, Object data) {
         assert USD_TOKEN_HASH == Runtime.getCallingScriptHash() : "Invalid caller.";
@@ -102,11 +250,35 @@ public class CatToken {
         // reject tx when this happens
         assert usedAmount == usdAmount : "Nonexchangeable amount detected.";
 
+        if (!(data instanceof Object[])) {
+            // anything but the pairs mints to the sender
+            if (catAmount != 0) {
+                addToBalance(from, catAmount);
+                addToTotalSupply(catAmount);
+            }
+            onTransfer.fire(null, from, catAmount);
+            return;
+        }
+
+        // mint to the recipients in the [recipient, catAmount] pairs instead
+        Object[] mints = (Object[]) data;
+        int sum = 0;
+        for (int i = 0; i < mints.length; i++) {
+            Object[] pair = (Object[]) mints[i];
+            Hash160 recipient = (Hash160) pair[0];
+            int amount = (int) pair[1];
+            assert Hash160.isValid(recipient) : "Recipient address is not a valid address.";
+            assert amount >= 0 : "Invalid amount.";
+            if (amount != 0) {
+                addToBalance(recipient, amount);
+            }
+            onTransfer.fire(null, recipient, amount);
+            sum += amount;
+        }
+        assert sum == catAmount : "Mint amounts don't match the payment.";
         if (catAmount != 0) {
-            addToBalance(from, catAmount);
             addToTotalSupply(catAmount);
         }
-        onTransfer.fire(null, from, catAmount);
     }
 
     public static boolean destroyToken(Hash160 from, int catAmount) {
@@ -153,6 +325,28 @@ public class CatToken {
         return result;
     }
 
+    /**
+     * Cursor version of {@link #dumpHolder(int, int)}.
+     * Pass null as cursor for the first page, then the returned cursor for the next one.
+     * See {@link StorageCursor#findAfter} for the cost of a page.
+     *
+     * @return Pair(holders, next cursor). The cursor is null if there is nothing left.
+     */
+    @Safe
+    public static Pair<List<Pair<Hash160, Integer>>, ByteString> dumpHolderByCursor(
+            ByteString cursor, int size
+    ) {
+        assert size >= 1 : "Invalid size, size must be non-negative number.";
+        List<Pair<Hash160, Integer>> result = new List<>();
+        Pair<List<Pair<ByteString, ByteString>>, ByteString> page = StorageCursor.findAfter(sc, ASSET_PREFIX, cursor, size, 0);
+        List<Pair<ByteString, ByteString>> entries = page.first;
+        for (int i = 0; i < entries.size(); i++) {
+            Pair<ByteString, ByteString> elem = entries.get(i);
+            result.add(new Pair<>(new Hash160(elem.first), elem.second.toIntOrZero()));
+        }
+        return new Pair<>(result, page.second);
+    }
+
     @OnDeployment
     public static void deploy(Object data, boolean update) {
         if (!update) {
@@ -165,6 +359,24 @@ public class CatToken {
         }
     }
 
+    /**
+     * The holder stats are kept since they are introduced. For the holders
+     * before that, the owner adds their count at the upgrade and feeds the
+     * big holders. The changes since the upgrade are kept, so it's only
+     * allowed once.
+     */
+    public static void initHolderStats(int holderCount, Hash160[] holders) {
+        throwIfSignerIsNotOwner();
+        assert holderCount >= 0 : "Invalid holder count.";
+        assert Storage.get(sc, HOLDER_STATS_INIT_KEY) == null : "Holder stats are already initialized.";
+        Storage.put(sc, HOLDER_STATS_INIT_KEY, 1);
+        addToHolderCount(holderCount);
+        for (int i = 0; i < holders.length; i++) {
+            int balance = getBalance(holders[i]);
+            updateTopHolders(holders[i], balance, balance);
+        }
+    }
+
     public static void update(ByteString script, String manifest) {
         throwIfSignerIsNotOwner();
         assert script.length() != 0 && manifest.length() != 0 : "The new contract script and manifest must not be empty.";
@@ -204,12 +416,35 @@ public class CatToken {
         return i == null ? 0 : i;
     }
 
+    private static void doTransfer(Hash160 from, Hash160 to, int amount, Object data) {
+        if (from != to && amount != 0) {
+            deductFromBalance(from, amount);
+            addToBalance(to, amount);
+        }
+
+        onTransfer.fire(from, to, amount);
+        if (ContractManagement.getContract(to) != null) {
+            Contract.call(to, "onNEP17Payment", CallFlags.All, new Object[]{from, amount, data});
+        }
+    }
+
+    private static int getAllowance(ByteString key) {
+        Integer i = allowanceMap.getInteger(key);
+        return i == null ? 0 : i;
+    }
+
     private static void throwIfSignerIsNotOwner() {
         assert Runtime.checkWitness(OWNER) : "The calling entity is not the owner of this contract.";
     }
 
     private static void addToBalance(Hash160 key, int value) {
-        assetMap.put(key.toByteString(), getBalance(key) + value);
+        int oldValue = getBalance(key);
+        assetMap.put(key.toByteString(), oldValue + value);
+        writeCheckpoint(key.toByteString(), oldValue, oldValue + value);
+        if (oldValue == 0 && value > 0) {
+            addToHolderCount(1);
+        }
+        updateTopHolders(key, oldValue, oldValue + value);
     }
 
     private static void deductFromBalance(Hash160 key, int value) {
@@ -220,14 +455,170 @@ public class CatToken {
         } else {
             assetMap.put(key.toByteString(), oldValue - value);
         }
+        writeCheckpoint(key.toByteString(), oldValue, oldValue - value);
+        if (oldValue == value && value > 0) {
+            addToHolderCount(-1);
+        }
+        updateTopHolders(key, oldValue, oldValue - value);
+    }
+
+    private static void addToHolderCount(int delta) {
+        Integer count = Storage.getInteger(sc, HOLDER_COUNT_KEY);
+        Storage.put(sc, HOLDER_COUNT_KEY, (count == null ? 0 : count) + delta);
+    }
+
+    /**
+     * Only touch the top holders if the account may be one of them,
+     * or its new balance is more than the last one.
+     */
+    private static void updateTopHolders(Hash160 account, int oldValue, int newValue) {
+        Integer min = Storage.getInteger(sc, TOP_HOLDER_MIN_KEY);
+        if (min != null && min != 0 && oldValue < min && newValue <= min) {
+            return;
+        }
+        List<Pair<Hash160, Integer>> holders = getTopHolders();
+        int index = -1;
+        for (int i = 0; i < holders.size(); i++) {
+            if (holders.get(i).first == account) {
+                index = i;
+                break;
+            }
+        }
+        if (index != -1) {
+            if (newValue == 0) {
+                // the next one gets in when its balance changes
+                holders.remove(index);
+            } else {
+                holders.set(index, new Pair<>(account, newValue));
+            }
+        } else if (newValue == 0) {
+            return;
+        } else if (holders.size() < TOP_HOLDER_SIZE) {
+            holders.add(new Pair<>(account, newValue));
+        } else if (newValue > holders.get(holders.size() - 1).second) {
+            holders.set(holders.size() - 1, new Pair<>(account, newValue));
+        } else {
+            return;
+        }
+        // insertion sort, biggest first
+        for (int i = 1; i < holders.size(); i++) {
+            Pair<Hash160, Integer> holder = holders.get(i);
+            int j = i - 1;
+            while (j >= 0 && holders.get(j).second < holder.second) {
+                holders.set(j + 1, holders.get(j));
+                j--;
+            }
+            holders.set(j + 1, holder);
+        }
+        ByteString data = new ByteString(new byte[0]);
+        for (int i = 0; i < holders.size(); i++) {
+            data = data.concat(holders.get(i).first.toByteString())
+                    .concat(Utils.intToPaddingByteString(holders.get(i).second, TOP_HOLDER_BALANCE_LENGTH));
+        }
+        Storage.put(sc, TOP_HOLDERS_KEY, data);
+        if (holders.size() == TOP_HOLDER_SIZE) {
+            Storage.put(sc, TOP_HOLDER_MIN_KEY, holders.get(TOP_HOLDER_SIZE - 1).second);
+        } else {
+            Storage.put(sc, TOP_HOLDER_MIN_KEY, 0);
+        }
+    }
+
+    private static List<Pair<Hash160, Integer>> getTopHolders() {
+        List<Pair<Hash160, Integer>> result = new List<>();
+        ByteString data = Storage.get(sc, TOP_HOLDERS_KEY);
+        if (data == null) {
+            return result;
+        }
+        int entryLength = HASH160_LENGTH + TOP_HOLDER_BALANCE_LENGTH;
+        for (int offset = 0; offset < data.length(); offset += entryLength) {
+            result.add(new Pair<>(
+                    new Hash160(data.range(offset, HASH160_LENGTH)),
+                    data.range(offset + HASH160_LENGTH, TOP_HOLDER_BALANCE_LENGTH).toInt()
+            ));
+        }
+        return result;
     }
 
     private static void addToTotalSupply(int value) {
-        Storage.put(sc, TOTAL_SUPPLY_KEY, getTotalSupply() + value);
+        int oldValue = getTotalSupply();
+        Storage.put(sc, TOTAL_SUPPLY_KEY, oldValue + value);
+        writeCheckpoint(new ByteString(new byte[0]), oldValue, oldValue + value);
     }
 
     private static void deductFromTotalSupply(int value) {
-        Storage.put(sc, TOTAL_SUPPLY_KEY, getTotalSupply() - value);
+        int oldValue = getTotalSupply();
+        Storage.put(sc, TOTAL_SUPPLY_KEY, oldValue - value);
+        writeCheckpoint(new ByteString(new byte[0]), oldValue, oldValue - value);
+    }
+
+    /**
+     * Record the new balance at the current block, the last checkpoint is
+     * overwritten if it's from the same block. The first checkpoint of an
+     * account holding tokens from before keeps the old balance at block 0.
+     */
+    private static void writeCheckpoint(ByteString account, int oldValue, int newValue) {
+        // the block being persisted
+        int blockIndex = LedgerContract.currentIndex() + 1;
+        int count = getCheckpointCount(account);
+        if (count == 0 && oldValue != 0) {
+            checkpointMap.put(getCheckpointKey(account, 0), encodeCheckpoint(0, oldValue));
+            count = 1;
+        } else if (count != 0) {
+            ByteString last = checkpointMap.get(getCheckpointKey(account, count - 1));
+            if (getCheckpointBlock(last) == blockIndex) {
+                checkpointMap.put(getCheckpointKey(account, count - 1), encodeCheckpoint(blockIndex, newValue));
+                return;
+            }
+        }
+        checkpointMap.put(getCheckpointKey(account, count), encodeCheckpoint(blockIndex, newValue));
+        checkpointCountMap.put(account, count + 1);
+    }
+
+    /**
+     * Binary search for the last checkpoint no later than the block,
+     * it reads at most log2(count) + 1 checkpoints.
+     *
+     * @return the balance of that checkpoint, 0 if all of them are later,
+     * or null if there is no checkpoint.
+     */
+    private static Integer getCheckpointAt(ByteString account, int blockIndex) {
+        int count = getCheckpointCount(account);
+        if (count == 0) {
+            return null;
+        }
+        // find the first checkpoint later than the block
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) / 2;
+            if (getCheckpointBlock(checkpointMap.get(getCheckpointKey(account, mid))) <= blockIndex) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == 0) {
+            return 0;
+        }
+        ByteString data = checkpointMap.get(getCheckpointKey(account, low - 1));
+        return data.last(data.length() - BLOCK_INDEX_LENGTH).toIntOrZero();
+    }
+
+    private static int getCheckpointCount(ByteString account) {
+        Integer i = checkpointCountMap.getInteger(account);
+        return i == null ? 0 : i;
+    }
+
+    private static ByteString getCheckpointKey(ByteString account, int index) {
+        return account.concat(Utils.intToPaddingByteString(index, CHECKPOINT_INDEX_LENGTH));
+    }
+
+    private static ByteString encodeCheckpoint(int blockIndex, int balance) {
+        return Utils.intToPaddingByteString(blockIndex, BLOCK_INDEX_LENGTH).concat(Utils.intToByteString(balance));
+    }
+
+    private static int getCheckpointBlock(ByteString data) {
+        return data.take(BLOCK_INDEX_LENGTH).toInt();
     }
 
     private static int getBalance(Hash160 key) {
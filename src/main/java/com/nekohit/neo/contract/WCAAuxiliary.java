@@ -31,4 +31,40 @@ public class WCAAuxiliary {
         }
         return dynamicContent.thresholdMilestonePassed || staticContent.isThresholdExpired();
     }
+
+    /**
+     * @param dynamicContent {@link ProjectDynamicContent} of the given project.
+     * @return String representation of the status.
+     */
+    public static String getStatusName(ProjectDynamicContent dynamicContent) {
+        if (dynamicContent.status == 0) {
+            return "PENDING";
+        } else if (dynamicContent.status == 1) {
+            return "ONGOING";
+        } else if (dynamicContent.status == 2) {
+            return "FINISHED";
+        } else if (dynamicContent.status == 3) {
+            return "CANCELLING";
+        } else {
+            return "UNKNOWN";
+        }
+    }
+
+    /**
+     * @param staticContent  {@link ProjectStaticContent} of the given project.
+     * @param dynamicContent {@link ProjectDynamicContent} of the given project.
+     * @return String representation of the stage, null if the status is not ONGOING.
+     */
+    public static String getStageName(ProjectStaticContent staticContent, ProjectDynamicContent dynamicContent) {
+        if (dynamicContent.status != 1) {
+            return null;
+        }
+        if (checkIfReadyToFinish(staticContent, dynamicContent)) {
+            return "Ready-To-Finish";
+        } else if (checkIfThresholdMet(staticContent, dynamicContent)) {
+            return "Active";
+        } else {
+            return "Open";
+        }
+    }
 }
@@ -2,6 +2,7 @@ package com.nekohit.neo.contract;
 
 import com.nekohit.neo.domain.*;
 import com.nekohit.neo.helper.Pair;
+import com.nekohit.neo.helper.StorageCursor;
 import com.nekohit.neo.helper.Utils;
 import io.neow3j.devpack.Runtime;
 import io.neow3j.devpack.*;
@@ -9,6 +10,7 @@ import io.neow3j.devpack.annotations.*;
 import io.neow3j.devpack.constants.CallFlags;
 import io.neow3j.devpack.constants.FindOptions;
 import io.neow3j.devpack.contracts.ContractManagement;
+import io.neow3j.devpack.contracts.CryptoLib;
 import io.neow3j.devpack.contracts.StdLib;
 import io.neow3j.devpack.events.Event1Arg;
 import io.neow3j.devpack.events.Event2Args;
@@ -19,7 +21,7 @@ import static com.nekohit.neo.contract.WCAAuxiliary.checkIfReadyToFinish;
 import static com.nekohit.neo.contract.WCAAuxiliary.checkIfThresholdMet;
 import static io.neow3j.devpack.StringLiteralHelper.addressToScriptHash;
 
-@SuppressWarnings({"unused", "unchecked"})
+@SuppressWarnings("unused")
 @ManifestExtra(key = "name", value = "WCA Contract")
 @ManifestExtra(key = "github", value = "https://github.com/NekoHitDev/Ritmin")
 @ManifestExtra(key = "author", value = "NekoHitDev")
@@ -34,11 +36,73 @@ public class WCAContract {
     private static final StorageContext CTX = Storage.getStorageContext();
 
     private static final String COUNTER_KEY = "CK";
+    // GAS kept by the @Safe scans, they stop and return where to continue if less is left.
+    // Test invocations run with the GAS limit of the node, so this doesn't affect fee estimation.
+    private static final int QUERY_GAS_RESERVE = 1000_0000;
+    // Project ids are fixed-width so "PP" + projectId never matches another project.
+    // Projects declared before this have shorter ids, they are migrated when touched.
+    private static final int PROJECT_ID_LENGTH = 4;
+    // At most this many purchase records are moved when migrating a project id,
+    // projects with more keep the short id, and scans skip other projects by key length.
+    private static final int MIGRATE_RECORD_LIMIT = 50;
+    // Deadline indexes are sought by windows of 2^24 ms, about 4.7 hours.
+    // The window is the big endian timestamp without its lowest 3 bytes.
+    private static final int DEADLINE_WINDOW_BITS = 24;
+    private static final int DEADLINE_WINDOW_LENGTH = StorageCodec.TIME_LENGTH - 3;
+    // A page resumed from a cursor stops after seeking this many windows without entries
+    private static final int MAX_EMPTY_DEADLINE_WINDOWS = 16;
+    private static final int HASH160_LENGTH = 20;
+    private static final int IDENTIFIER_KEY_LENGTH = 20;
+    private static final int MILESTONE_INDEX_LENGTH = 2;
+    // How many buyers are refunded by cancelProject, the rest are left to continueCancel
+    private static final int DEFAULT_CANCEL_BATCH_SIZE = 50;
+    // Fields of the token statistics, project count of status s is at STAT_STATUS_BASE + s
+    private static final int STAT_STAKED = 0;
+    private static final int STAT_PURCHASED = 1;
+    private static final int STAT_REFUNDED = 2;
+    private static final int STAT_SETTLED = 3;
+    private static final int STAT_STATUS_BASE = 16;
+    // Key: first 20 bytes of sha256(identifier), value: projectId
+    // Projects declared before that use the raw identifier as key
     private static final StorageMap projectIdentifierMap = CTX.createMap("ID");
     private static final StorageMap projectStaticContentMap = CTX.createMap("SC");
     private static final StorageMap projectDynamicContentMap = CTX.createMap("DC");
-    private static final StorageMap projectPurchaseRecordMap = CTX.createMap("PR");
+    // Purchase records, key: projectId + buyer, value: amount
+    private static final StorageMap projectPurchaseRecordMap = CTX.createMap("PP");
+    // Purchase records of the short ids, "PR" + id also covers the records
+    // of other short ids, but not the fixed-width ones in "PP"
+    private static final StorageMap legacyPurchaseRecordMap = CTX.createMap("PR");
+    // Milestones of projects declared before the schedule record, key: projectId + index
     private static final StorageMap projectMilestoneMap = CTX.createMap("MS");
+    // Milestone schedule, key: projectId, value: all milestones without proof of work
+    private static final StorageMap projectScheduleMap = CTX.createMap("MP");
+    // Proof of work of finished milestones, key: projectId + index, value: proof of work
+    private static final StorageMap proofOfWorkMap = CTX.createMap("PW");
+    // Hot counters of dynamic content, key: projectId, value: int
+    // Purchase only touches them, so they are kept out of the dynamic content record
+    private static final StorageMap projectRemainTokenMap = CTX.createMap("RT");
+    private static final StorageMap projectPurchasedAmountMap = CTX.createMap("PA");
+    private static final StorageMap projectBuyerCounterMap = CTX.createMap("BC");
+    // Settlement of finished projects, buyers claim their part later.
+    // Key: projectId, value: tokens reserved for unclaimed buyers
+    private static final StorageMap settlementPoolMap = CTX.createMap("SP");
+    // Key: projectId, value: count of unclaimed buyers
+    private static final StorageMap settlementBuyerMap = CTX.createMap("SB");
+    // Key: projectId + buyer, value: claimed amount
+    private static final StorageMap claimedMap = CTX.createMap("CL");
+    // Secondary indexes, key: hash + projectId, value: identifier
+    private static final StorageMap creatorIndexMap = CTX.createMap("IC");
+    private static final StorageMap tokenIndexMap = CTX.createMap("IT");
+    private static final StorageMap buyerIndexMap = CTX.createMap("IB");
+    // Status index, key: status (1 byte) + projectId, value: identifier
+    private static final StorageMap statusIndexMap = CTX.createMap("IS");
+    // Deadline indexes, key: big endian expire time + projectId, value: identifier
+    // last milestone, aka when the project becomes Ready-To-Finish
+    private static final StorageMap lastExpireIndexMap = CTX.createMap("DL");
+    // threshold milestone
+    private static final StorageMap thresholdExpireIndexMap = CTX.createMap("DT");
+    // Statistics per token, key: tokenHash + field (1 byte), value: int
+    private static final StorageMap tokenStatsMap = CTX.createMap("ST");
 
     // creator, identifier, milestone count
     @DisplayName("DeclareProject")
@@ -60,6 +124,10 @@ public class WCAContract {
     @DisplayName("FinishProject")
     private static Event1Arg<String> onFinishProject;
 
+    // buyer, identifier, claimed amount
+    @DisplayName("Claim")
+    private static Event3Args<Hash160, String, Integer> onClaim;
+
     // buyer, identifier, return to buyer amount, return to creator amount
     @DisplayName("Refund")
     private static Event4Args<Hash160, String, Integer, Integer> onRefund;
@@ -69,42 +137,87 @@ public class WCAContract {
     private static Event1Arg<String> onCancelProject;
 
 
+    /**
+     * The data can be a single identifier, or an array of [identifier, amount] pairs
+     * to purchase multiple projects in one payment. The sum of amounts must match the
+     * transferred amount. Stake can only be paid with a single identifier.
+     */
     @OnNEP17Payment
     public static void onPayment(Hash160 from, int amount, Object data) {
         assert amount >= 0 : ExceptionMessages.INVALID_AMOUNT;
+        if (!(data instanceof String)) {
+            Object[] purchases = (Object[]) data;
+            // share the loaded project if it shows up more than once
+            Map<String, ProjectContext> contexts = new Map<>();
+            // amount purchased in this call of each project
+            Map<String, Integer> purchased = new Map<>();
+            List<ProjectContext> touched = new List<>();
+            int sum = 0;
+            for (int i = 0; i < purchases.length; i++) {
+                Object[] pair = (Object[]) purchases[i];
+                String identifier = (String) pair[0];
+                int purchaseAmount = (int) pair[1];
+                assert purchaseAmount > 0 : ExceptionMessages.INVALID_AMOUNT;
+                ProjectContext ctx;
+                if (contexts.containsKey(identifier)) {
+                    ctx = contexts.get(identifier);
+                } else {
+                    ctx = loadContext(identifier);
+                    assert ctx.staticContent.tokenHash == Runtime.getCallingScriptHash() : ExceptionMessages.INVALID_CALLER;
+                    assert !ctx.staticContent.owner.equals(from) : ExceptionMessages.INVALID_CALLER;
+                    contexts.put(identifier, ctx);
+                    purchased.put(identifier, 0);
+                    touched.add(ctx);
+                }
+                purchase(from, ctx, purchaseAmount);
+                purchased.put(identifier, purchased.get(identifier) + purchaseAmount);
+                sum += purchaseAmount;
+            }
+            assert sum == amount : ExceptionMessages.INCORRECT_AMOUNT;
+            // all projects take the calling token, so the statistics are added once
+            int countedSum = 0;
+            for (int i = 0; i < touched.size(); i++) {
+                ProjectContext ctx = touched.get(i);
+                if (isCounted(ctx.projectId, 1)) {
+                    countedSum += purchased.get(ctx.identifier);
+                }
+            }
+            if (countedSum != 0) {
+                addToStats(Runtime.getCallingScriptHash(), STAT_PURCHASED, countedSum);
+            }
+            for (int i = 0; i < touched.size(); i++) {
+                flushContext(touched.get(i));
+            }
+            return;
+        }
         String identifier = (String) data;
-        ByteString projectId = getProjectId(identifier);
-
-        ProjectStaticContent staticContent = getStaticContent(projectId);
+        ProjectContext ctx = loadContext(identifier);
+        ProjectStaticContent staticContent = ctx.staticContent;
         // Check from hash, must be the one chosen by creator
         assert staticContent.tokenHash == Runtime.getCallingScriptHash() : ExceptionMessages.INVALID_CALLER;
-        ProjectDynamicContent dynamicContent = getDynamicContent(projectId);
 
         if (staticContent.owner.equals(from)) {
             // owner paying stake
+            ProjectDynamicContent dynamicContent = ctx.dynamicContent;
             assert dynamicContent.status == 0 : ExceptionMessages.INVALID_STATUS_ALLOW_PENDING;
             assert staticContent.getTotalStake() == amount : ExceptionMessages.INCORRECT_AMOUNT;
             // unpaid before, amount is correct, set to ONGOING
             dynamicContent.status = 1;
+            ctx.dynamicContentDirty = true;
             onPayStake.fire(from, identifier, amount);
+            updateStatus(identifier, ctx.projectId, staticContent, 0, 1);
+            if (isCounted(ctx.projectId, 1)) {
+                addToStats(staticContent.tokenHash, STAT_STAKED, amount);
+            }
+            // only ONGOING projects can be finished, so they are indexed from now on
+            putDeadlineIndex(identifier, ctx.projectId, staticContent);
         } else {
-            assert dynamicContent.status == 1 : ExceptionMessages.INVALID_STATUS_ALLOW_ONGOING;
-            assert !checkIfReadyToFinish(staticContent, dynamicContent) : ExceptionMessages.INVALID_STAGE_READY_TO_FINISH;
-            assert dynamicContent.remainTokenCount >= amount : ExceptionMessages.INSUFFICIENT_AMOUNT_REMAIN;
-            dynamicContent.remainTokenCount -= amount;
-            dynamicContent.totalPurchasedAmount += amount;
-            // update purchase record
-            ByteString purchaseId = projectId.concat(from.toByteString());
-            Integer value = projectPurchaseRecordMap.getInteger(purchaseId);
-            if (value == null) { // new purchase
-                dynamicContent.buyerCounter++;
-                value = 0;
-            }
-            value += amount;
-            projectPurchaseRecordMap.put(purchaseId, value);
-            onPurchaseProject.fire(from, identifier, amount);
+            purchase(from, ctx, amount);
+            if (isCounted(ctx.projectId, 1)) {
+                addToStats(staticContent.tokenHash, STAT_PURCHASED, amount);
+            }
         }
-        updateDynamicContent(projectId, dynamicContent);
+        flushContext(ctx);
     }
 
     @Safe
@@ -121,6 +234,21 @@ public class WCAContract {
         }
     }
 
+    /**
+     * Summary version of {@link #queryProjectProto(String)}, without milestones and description.
+     */
+    @Safe
+    public static ProjectSummaryPojo queryProjectSummary(String identifier) {
+        try {
+            ByteString projectId = getProjectId(identifier);
+            ProjectStaticContent staticContent = getStaticContent(projectId);
+            ProjectDynamicContent dynamicContent = getDynamicContent(projectId);
+            return new ProjectSummaryPojo(identifier, staticContent, dynamicContent);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     // TODO gradually remove this function
     @Safe
     public static String queryProject(String identifier) {
@@ -136,13 +264,56 @@ public class WCAContract {
     public static int queryPurchase(String identifier, Hash160 buyer) {
         try {
             ByteString projectId = getProjectId(identifier);
-            Integer value = projectPurchaseRecordMap.getInteger(projectId.concat(buyer.toByteString()));
+            Integer value = getPurchaseRecordMap(projectId).getInteger(projectId.concat(buyer.toByteString()));
             return value == null ? 0 : value;
         } catch (Exception e) {
             return 0;
         }
     }
 
+    /**
+     * Batch version of {@link #queryPurchase(String, Hash160)}.
+     * The i-th result is the purchase of buyers[i] in identifiers[i], 0 if not found.
+     */
+    @Safe
+    public static List<Integer> queryPurchases(String[] identifiers, Hash160[] buyers) {
+        assert identifiers.length == buyers.length : ExceptionMessages.INVALID_SIZE;
+        // identifier -> projectId, null if not found
+        Map<String, ByteString> projectIds = new Map<>();
+        List<Integer> result = new List<>();
+        for (int i = 0; i < identifiers.length; i++) {
+            String identifier = identifiers[i];
+            if (!projectIds.containsKey(identifier)) {
+                projectIds.put(identifier, findProjectId(identifier));
+            }
+            ByteString projectId = projectIds.get(identifier);
+            Integer value = null;
+            if (projectId != null && Hash160.isValid(buyers[i])) {
+                value = getPurchaseRecordMap(projectId).getInteger(projectId.concat(buyers[i].toByteString()));
+            }
+            result.add(value == null ? 0 : value);
+        }
+        return result;
+    }
+
+    /**
+     * Batch version of {@link #queryProjectProto(String)}.
+     * The i-th result is the project of identifiers[i], null if not found.
+     */
+    @Safe
+    public static List<ProjectPojo> queryProjects(String[] identifiers) {
+        Map<String, ProjectPojo> projects = new Map<>();
+        List<ProjectPojo> result = new List<>();
+        for (int i = 0; i < identifiers.length; i++) {
+            String identifier = identifiers[i];
+            if (!projects.containsKey(identifier)) {
+                projects.put(identifier, queryProjectProto(identifier));
+            }
+            result.add(projects.get(identifier));
+        }
+        return result;
+    }
+
     @Safe
     public static List<Pair<Hash160, Integer>> dumpPurchaseRecord(
             String identifier, int page, int size
@@ -153,11 +324,14 @@ public class WCAContract {
         List<Pair<Hash160, Integer>> result = new List<>();
 
         ByteString projectId = getProjectId(identifier);
-        ByteString prefix = new ByteString("PR").concat(projectId);
+        ByteString prefix = getPurchaseRecordPrefix(projectId);
         Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(CTX, prefix, FindOptions.RemovePrefix);
 
         while (result.size() < size && iter.next()) {
             Iterator.Struct<ByteString, ByteString> elem = iter.get();
+            if (elem.key.length() != HASH160_LENGTH) { // not this project
+                continue;
+            }
             if (offset != 0) { // skip the offset
                 offset--;
                 continue;
@@ -169,6 +343,33 @@ public class WCAContract {
         return result;
     }
 
+    /**
+     * Cursor version of {@link #dumpPurchaseRecord(String, int, int)}.
+     * Pass null as cursor for the first page, then the returned cursor for the next one.
+     *
+     * @return Pair(records, next cursor). The cursor is null if there is nothing left.
+     */
+    @Safe
+    public static Pair<List<Pair<Hash160, Integer>>, ByteString> dumpPurchaseRecordByCursor(
+            String identifier, ByteString cursor, int size
+    ) {
+        assert size >= 1 : ExceptionMessages.INVALID_SIZE;
+        List<Pair<Hash160, Integer>> result = new List<>();
+
+        ByteString projectId = getProjectId(identifier);
+        ByteString prefix = getPurchaseRecordPrefix(projectId);
+        Pair<List<Pair<ByteString, ByteString>>, ByteString> page = StorageCursor.findAfter(CTX, prefix, cursor, size, QUERY_GAS_RESERVE);
+        List<Pair<ByteString, ByteString>> entries = page.first;
+        for (int i = 0; i < entries.size(); i++) {
+            Pair<ByteString, ByteString> elem = entries.get(i);
+            if (elem.first.length() != HASH160_LENGTH) { // not this project
+                continue;
+            }
+            result.add(new Pair<>(new Hash160(elem.first), elem.second.toIntOrZero()));
+        }
+        return new Pair<>(result, page.second);
+    }
+
     @Safe
     public static List<ProjectPojo> advanceQueryProto(
             Hash160 token, Hash160 creator, Hash160 buyer, int page, int size
@@ -176,47 +377,142 @@ public class WCAContract {
         assert page >= 1 : ExceptionMessages.INVALID_PAGE;
         assert size >= 1 : ExceptionMessages.INVALID_SIZE;
         int offset = (page - 1) * size;
+        ByteString prefix = advanceQueryPrefix(creator, buyer, token);
+        boolean byIndex = isFilterSet(creator) || isFilterSet(buyer) || isFilterSet(token);
+        if (isFilterSet(buyer) && !isFilterSet(creator)) {
+            // already walking the buyer index
+            buyer = null;
+        }
         List<ProjectPojo> result = new List<>();
-        Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(CTX, "ID", FindOptions.RemovePrefix);
+        Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(CTX, prefix, FindOptions.RemovePrefix);
         while (result.size() < size && iter.next()) {
-            String identifier = iter.get().key.toString();
-            ByteString projectId = iter.get().value;
-            ProjectStaticContent staticContent = getStaticContent(projectId);
-            if (!staticContent.bePublic) {
+            Iterator.Struct<ByteString, ByteString> elem = iter.get();
+            ProjectPojo pojo = advanceQueryFilter(elem.key, elem.value, byIndex, token, creator, buyer);
+            if (pojo == null) {
                 continue;
             }
-            if (token != null && token != Hash160.zero()) {
-                // filter token
-                if (staticContent.tokenHash != token) {
-                    continue;
-                }
-            }
-            if (creator != null && creator != Hash160.zero()) {
-                // filter creator
-                if (staticContent.owner != creator) {
-                    continue;
-                }
-            }
-            if (buyer != null && buyer != Hash160.zero()) {
-                // filter buyer
-                if (projectPurchaseRecordMap.get(projectId.concat(buyer.toByteString())) == null) {
-                    continue;
-                }
-            }
             if (offset != 0) {
                 // skip the offset
                 offset--;
                 continue;
             }
-            ProjectMilestone[] milestonesInfo = getMilestones(projectId, staticContent);
-            ProjectDynamicContent dynamicContent = getDynamicContent(projectId);
-
-            ProjectPojo pojo = new ProjectPojo(identifier, staticContent, dynamicContent, milestonesInfo);
             result.add(pojo);
         }
         return result;
     }
 
+    /**
+     * Cursor version of {@link #advanceQueryProto(Hash160, Hash160, Hash160, int, int)}.
+     * Pass null as cursor for the first page, then the returned cursor for the next one.
+     *
+     * @return Pair(projects, next cursor). The cursor is null if there is nothing left.
+     */
+    @Safe
+    public static Pair<List<ProjectPojo>, ByteString> advanceQueryProtoByCursor(
+            Hash160 token, Hash160 creator, Hash160 buyer, ByteString cursor, int size
+    ) {
+        return advanceQueryByCursor(token, creator, buyer, cursor, size, false);
+    }
+
+    /**
+     * List the identifiers of projects with the given status, in the order of project id.
+     * Stages like Ready-To-Finish depend on the time, so they can't be indexed here,
+     * use {@link #listExpiringBefore(int, ByteString, int)} for them.
+     * Pass null as cursor for the first page, then the returned cursor for the next one.
+     *
+     * @param status 0 - PENDING, 1 - ONGOING, 2 - FINISHED, 3 - CANCELLING
+     * @return Pair(identifiers, next cursor). The cursor is null if there is nothing left.
+     */
+    @Safe
+    public static Pair<List<String>, ByteString> listByStatus(int status, ByteString cursor, int size) {
+        assert size >= 1 : ExceptionMessages.INVALID_SIZE;
+        ByteString prefix = new ByteString("IS").concat(Utils.byteToByteString(status));
+        Pair<List<Pair<ByteString, ByteString>>, ByteString> page = StorageCursor.findAfter(CTX, prefix, cursor, size, QUERY_GAS_RESERVE);
+        List<Pair<ByteString, ByteString>> entries = page.first;
+        List<String> result = new List<>();
+        for (int i = 0; i < entries.size(); i++) {
+            result.add(entries.get(i).second.toString());
+        }
+        return new Pair<>(result, page.second);
+    }
+
+    /**
+     * List the identifiers of ONGOING projects whose last milestone expires
+     * no later than the given timestamp, aka the Ready-To-Finish candidates, earliest first.
+     * Pass null as cursor for the first page, then the returned cursor for the next one.
+     *
+     * @return Pair(identifiers, next cursor). The cursor is null if there is nothing left.
+     */
+    @Safe
+    public static Pair<List<String>, ByteString> listExpiringBefore(int timestamp, ByteString cursor, int size) {
+        return listDeadlineIndex(new ByteString("DL"), timestamp, cursor, size);
+    }
+
+    /**
+     * Same as {@link #listExpiringBefore(int, ByteString, int)}, but for the threshold milestone.
+     */
+    @Safe
+    public static Pair<List<String>, ByteString> listThresholdExpiringBefore(int timestamp, ByteString cursor, int size) {
+        return listDeadlineIndex(new ByteString("DT"), timestamp, cursor, size);
+    }
+
+    /**
+     * List the projects backed by the buyer and the amount of each, from the buyer index.
+     * Pass null as cursor for the first page, then the returned cursor for the next one.
+     *
+     * @return Pair(list of Pair(identifier, amount), next cursor). The cursor is null if there is nothing left.
+     */
+    @Safe
+    public static Pair<List<Pair<String, Integer>>, ByteString> queryBuyerProjects(
+            Hash160 buyer, ByteString cursor, int size
+    ) {
+        assert Hash160.isValid(buyer) : ExceptionMessages.INVALID_HASH160;
+        assert size >= 1 : ExceptionMessages.INVALID_SIZE;
+        ByteString prefix = new ByteString("IB").concat(buyer.toByteString());
+        Pair<List<Pair<ByteString, ByteString>>, ByteString> page = StorageCursor.findAfter(CTX, prefix, cursor, size, QUERY_GAS_RESERVE);
+        List<Pair<ByteString, ByteString>> entries = page.first;
+        List<Pair<String, Integer>> result = new List<>();
+        for (int i = 0; i < entries.size(); i++) {
+            Pair<ByteString, ByteString> elem = entries.get(i);
+            Integer amount = getPurchaseRecordMap(elem.first).getInteger(elem.first.concat(buyer.toByteString()));
+            result.add(new Pair<>(elem.second.toString(), amount == null ? 0 : amount));
+        }
+        return new Pair<>(result, page.second);
+    }
+
+    /**
+     * Summary version of {@link #advanceQueryProtoByCursor(Hash160, Hash160, Hash160, ByteString, int)}.
+     * Milestones are not loaded, use {@link #queryProjectProto(String)} for them.
+     *
+     * @return Pair(project summaries, next cursor). The cursor is null if there is nothing left.
+     */
+    @Safe
+    public static Pair<List<ProjectSummaryPojo>, ByteString> advanceQuerySummaryByCursor(
+            Hash160 token, Hash160 creator, Hash160 buyer, ByteString cursor, int size
+    ) {
+        return advanceQueryByCursor(token, creator, buyer, cursor, size, true);
+    }
+
+    /**
+     * Get the statistics of the projects using the given token.
+     * The amounts are accumulated since the statistics are introduced,
+     * and the tokens locked in this contract is staked + purchased - refunded - settled.
+     */
+    @Safe
+    public static TokenStatsPojo getStats(Hash160 token) {
+        assert Hash160.isValid(token) : ExceptionMessages.INVALID_HASH160;
+        return new TokenStatsPojo(
+                getStatsField(token, STAT_STAKED),
+                getStatsField(token, STAT_PURCHASED),
+                getStatsField(token, STAT_REFUNDED),
+                getStatsField(token, STAT_SETTLED),
+                getStatsField(token, STAT_STATUS_BASE),
+                getStatsField(token, STAT_STATUS_BASE + 1),
+                getStatsField(token, STAT_STATUS_BASE + 2),
+                getStatsField(token, STAT_STATUS_BASE + 3)
+        );
+    }
+
     // TODO gradually remove this method
     @Safe
     public static String advanceQuery(
@@ -238,7 +534,7 @@ public class WCAContract {
         assert Runtime.checkWitness(owner) || owner == Runtime.getCallingScriptHash() : ExceptionMessages.INVALID_SIGNATURE;
         // projectId should be unique
         assert identifier.length() != 0 : ExceptionMessages.EMPTY_ID;
-        assert projectIdentifierMap.get(identifier) == null : ExceptionMessages.DUPLICATED_ID;
+        assert findProjectId(identifier) == null : ExceptionMessages.DUPLICATED_ID;
         Integer counter = Storage.getInteger(CTX, COUNTER_KEY);
         if (counter == null) {
             counter = 0;
@@ -246,8 +542,8 @@ public class WCAContract {
         counter++; // update counter
         Storage.put(CTX, COUNTER_KEY, counter);
         // save project id
-        ByteString projectId = Utils.intToByteString(counter);
-        projectIdentifierMap.put(identifier, projectId);
+        ByteString projectId = Utils.intToPaddingByteString(counter, PROJECT_ID_LENGTH);
+        projectIdentifierMap.put(getIdentifierKey(identifier), projectId);
 
         assert projectDescription != null : ExceptionMessages.NULL_DESCRIPTION;
         assert stakeRate100 > 0 : ExceptionMessages.INVALID_STAKE_RATE;
@@ -257,15 +553,20 @@ public class WCAContract {
         int milestoneCount = endTimestamps.length;
         assert milestoneTitles.length == milestoneCount : ExceptionMessages.INVALID_MILESTONES_COUNT;
         assert milestoneCount == milestoneDescriptions.length : ExceptionMessages.INVALID_MILESTONES_COUNT;
+        // index must fit in the milestone key, the highest bit is the sign
+        assert milestoneCount <= 0x7FFF : ExceptionMessages.INVALID_MILESTONES_COUNT;
 
         int lastTimestamp = 0;
         assert endTimestamps[0] > Runtime.getTime() : ExceptionMessages.EXPIRED_TIMESTAMP;
+        ProjectMilestone[] milestones = new ProjectMilestone[milestoneCount];
         for (int i = 0; i < milestoneCount; i++) {
             int t = endTimestamps[i];
             assert lastTimestamp < t : ExceptionMessages.INVALID_TIMESTAMP;
             lastTimestamp = t;
-            updateMilestone(projectId, i, new ProjectMilestone(milestoneTitles[i], milestoneDescriptions[i], t));
+            milestones[i] = new ProjectMilestone(milestoneTitles[i], milestoneDescriptions[i], t);
         }
+        // the schedule never changes, proof of work goes to its own key when finished
+        projectScheduleMap.put(projectId, ProjectMilestone.scheduleToByteString(milestones));
         assert thresholdIndex >= 0 && thresholdIndex < milestoneCount : ExceptionMessages.INVALID_THRESHOLD_INDEX;
         assert coolDownInterval > 0 : ExceptionMessages.INVALID_COOL_DOWN_INTERVAL;
 
@@ -274,25 +575,32 @@ public class WCAContract {
                 owner, projectDescription, tokenHash, stakeRate100, maxTokenSoldCount,
                 milestoneCount, thresholdIndex, coolDownInterval,
                 endTimestamps[thresholdIndex], endTimestamps[milestoneCount - 1],
-                bePublic
+                bePublic, Runtime.getTime()
         );
 
+        staticContent.identifier = identifier;
         // store
-        projectStaticContentMap.put(projectId, StdLib.serialize(staticContent));
-        updateDynamicContent(projectId, new ProjectDynamicContent(maxTokenSoldCount));
+        projectStaticContentMap.put(projectId, staticContent.toByteString());
+        ProjectDynamicContent dynamicContent = new ProjectDynamicContent(maxTokenSoldCount);
+        updateDynamicContent(projectId, dynamicContent);
+        updateHotCounters(projectId, dynamicContent);
+        creatorIndexMap.put(owner.toByteString().concat(projectId), identifier);
+        tokenIndexMap.put(tokenHash.toByteString().concat(projectId), identifier);
+        statusIndexMap.put(getStatusIndexKey(0, projectId), identifier);
+        addToStats(tokenHash, STAT_STATUS_BASE, 1);
         // fire event and done
         onDeclareProject.fire(owner, identifier, milestoneTitles.length);
         return identifier;
     }
 
     public static void finishMilestone(String identifier, int index, String proofOfWork) {
-        ByteString projectId = getProjectId(identifier);
-        ProjectStaticContent staticContent = getStaticContent(projectId);
+        ProjectContext ctx = loadContext(identifier);
+        ProjectStaticContent staticContent = ctx.staticContent;
         // only creator can update project to finished
         assert Runtime.checkWitness(staticContent.owner) || staticContent.owner == Runtime.getCallingScriptHash() : ExceptionMessages.INVALID_SIGNATURE;
-        ProjectDynamicContent dynamicContent = getDynamicContent(projectId);
+        ProjectDynamicContent dynamicContent = ctx.dynamicContent;
         assert dynamicContent.status == 1 : ExceptionMessages.INVALID_STATUS_ALLOW_ONGOING;
-        ProjectMilestone ms = getMilestone(projectId, index);
+        ProjectMilestone ms = getContextMilestone(ctx, index);
         assert ms != null : ExceptionMessages.RECORD_NOT_FOUND;
         // check cool-down time first
         int currentTime = Runtime.getTime();
@@ -303,6 +611,7 @@ public class WCAContract {
         // not finished nor expired, then we can modify it.
         assert proofOfWork != null && proofOfWork.length() != 0 : ExceptionMessages.INVALID_PROOF_OF_WORK;
         ms.proofOfWork = proofOfWork;
+        ctx.markMilestoneDirty(index);
         dynamicContent.nextMilestoneIndex = index + 1;
         dynamicContent.finishedMilestoneCount++;
         dynamicContent.lastUpdateTime = currentTime;
@@ -313,102 +622,145 @@ public class WCAContract {
         if (index == staticContent.milestoneCount - 1) {
             dynamicContent.lastMilestoneFinished = true;
         }
-
-        // store it back
-        updateDynamicContent(projectId, dynamicContent);
-        updateMilestone(projectId, index, ms);
+        ctx.dynamicContentDirty = true;
         onFinishMilestone.fire(identifier, index);
 
-        // if whole project is finished
+        // if whole project is finished, the records are written along with the settlement
         if (checkIfReadyToFinish(staticContent, dynamicContent)) {
-            finishProject(identifier);
+            settleProject(ctx);
+        } else {
+            flushContext(ctx);
         }
     }
 
     public static void finishProject(String identifier) {
-        ByteString projectId = getProjectId(identifier);
-        ProjectStaticContent staticContent = getStaticContent(projectId);
-        ProjectDynamicContent dynamicContent = getDynamicContent(projectId);
-        assert dynamicContent.status == 1 : ExceptionMessages.INVALID_STATUS_ALLOW_ONGOING;
+        ProjectContext ctx = loadContext(identifier);
+        assert ctx.dynamicContent.status == 1 : ExceptionMessages.INVALID_STATUS_ALLOW_ONGOING;
         // only owner can finish an unfinished project
         // otherwise, other one can only finish ready-to-finished
-        assert Runtime.checkWitness(staticContent.owner) || checkIfReadyToFinish(staticContent, dynamicContent) : ExceptionMessages.INVALID_STAGE_ALLOW_READY_TO_FINISH;
+        assert Runtime.checkWitness(ctx.staticContent.owner) || checkIfReadyToFinish(ctx.staticContent, ctx.dynamicContent) : ExceptionMessages.INVALID_STAGE_ALLOW_READY_TO_FINISH;
 
-        // Update status first to prevent re-entry attack
-        dynamicContent.status = 2;
-        dynamicContent.lastUpdateTime = Runtime.getTime();
-        updateDynamicContent(projectId, dynamicContent);
-        // At this time, the project is finished, no more operation is allowed
+        settleProject(ctx);
+    }
 
-        int remainTokens = staticContent.getTotalStake() + dynamicContent.totalPurchasedAmount;
-        int totalMilestones = staticContent.milestoneCount;
-        int unfinishedMilestones = totalMilestones - dynamicContent.finishedMilestoneCount;
-
-        // If there are unfinished milestone, refund
-        if (unfinishedMilestones != 0) {
-            // for each buyer, return their token based on unfinished ms count
-            // also remove stakes for that unfinished one
-            ByteString prefix = new ByteString("PR").concat(projectId);
-            Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(CTX, prefix, FindOptions.RemovePrefix);
-            while (iter.next()) {
-                Iterator.Struct<ByteString, ByteString> elem = iter.get();
-                Hash160 buyer = new Hash160(elem.key);
-                int purchaseAmount = elem.value.toIntOrZero();
-                int totalAmount = purchaseAmount + purchaseAmount * staticContent.stakeRate100 / 100;
-                int returnAmount = totalAmount * unfinishedMilestones / totalMilestones;
-                transferTokenTo(staticContent.tokenHash, buyer, returnAmount, identifier);
-                remainTokens -= returnAmount;
+    /**
+     * Finish the Ready-To-Finish projects in the list, for keepers.
+     * Projects that don't exist or are not Ready-To-Finish are skipped.
+     * Stop before the next project if the GAS left is lower than the reserve,
+     * the caller can continue from the returned index in another transaction.
+     * The fee estimated by a test invocation leaves no GAS over, so attach
+     * the reserve on top of it, or pass 0 to disable the check.
+     *
+     * @param gasReserve in the unit of 10^-8 GAS.
+     * @return how many identifiers are processed, finished or skipped.
+     */
+    public static int finishProjects(String[] identifiers, int gasReserve) {
+        assert gasReserve >= 0 : ExceptionMessages.INVALID_AMOUNT;
+        int i = 0;
+        for (; i < identifiers.length; i++) {
+            if (isGasLow(gasReserve)) {
+                break;
+            }
+            String identifier = identifiers[i];
+            ByteString projectId = projectIdentifierMap.get(getIdentifierKey(identifier));
+            boolean hashed = projectId != null;
+            if (!hashed) {
+                projectId = projectIdentifierMap.get(identifier);
+                if (projectId == null) {
+                    continue;
+                }
             }
+            // check before writing anything, skipped projects are left as they are
+            ProjectStaticContent staticContent = getStaticContent(projectId);
+            ProjectDynamicContent dynamicContent = getDynamicContent(projectId);
+            if (dynamicContent.status != 1 || !checkIfReadyToFinish(staticContent, dynamicContent)) {
+                continue;
+            }
+            if (!hashed) {
+                // only old projects need it, the ones under the hashed key are in the compact layout
+                projectId = migrateIdentifier(identifier, projectId);
+            }
+            settleProject(new ProjectContext(identifier, projectId, staticContent, dynamicContent));
         }
-        // considering all decimals are floored, so totalTokens > 0
-        // return the reset of total tokens to creator
-        if (remainTokens > 0) {
-            transferTokenTo(staticContent.tokenHash, staticContent.owner, remainTokens, identifier);
+        return i;
+    }
+
+    /**
+     * Claim the refund of a finished project for the buyer.
+     * Anyone can call this, the tokens always go to the buyer.
+     */
+    public static void claim(String identifier, Hash160 buyer) {
+        assert Hash160.isValid(buyer) : ExceptionMessages.INVALID_HASH160;
+        ProjectContext ctx = loadContext(identifier);
+        assert ctx.dynamicContent.status == 2 : ExceptionMessages.INVALID_STATUS_ALLOW_FINISHED;
+        boolean claimed = claimFor(identifier, ctx.projectId, ctx.staticContent, ctx.dynamicContent, buyer);
+        assert claimed : ExceptionMessages.RECORD_NOT_FOUND;
+    }
+
+    /**
+     * Batch version of {@link #claim(String, Hash160)}.
+     * Buyers who have nothing to claim are skipped.
+     *
+     * @return how many buyers are claimed.
+     */
+    public static int claimMany(String identifier, Hash160[] buyers) {
+        ProjectContext ctx = loadContext(identifier);
+        assert ctx.dynamicContent.status == 2 : ExceptionMessages.INVALID_STATUS_ALLOW_FINISHED;
+        int count = 0;
+        for (int i = 0; i < buyers.length; i++) {
+            assert Hash160.isValid(buyers[i]) : ExceptionMessages.INVALID_HASH160;
+            if (claimFor(identifier, ctx.projectId, ctx.staticContent, ctx.dynamicContent, buyers[i])) {
+                count++;
+            }
         }
-        onFinishProject.fire(identifier);
+        return count;
     }
 
     public static void refund(String identifier, Hash160 buyer) {
         assert Hash160.isValid(buyer) : ExceptionMessages.INVALID_HASH160;
         assert Runtime.checkWitness(buyer) || buyer == Runtime.getCallingScriptHash() : ExceptionMessages.INVALID_SIGNATURE;
-        ByteString projectId = getProjectId(identifier);
-        ProjectStaticContent staticContent = getStaticContent(projectId);
-        ProjectDynamicContent dynamicContent = getDynamicContent(projectId);
+        ProjectContext ctx = loadContext(identifier);
+        ByteString projectId = ctx.projectId;
+        ProjectStaticContent staticContent = ctx.staticContent;
+        ProjectDynamicContent dynamicContent = ctx.dynamicContent;
         assert dynamicContent.status == 1 : ExceptionMessages.INVALID_STATUS_ALLOW_ONGOING;
 
         assert !checkIfReadyToFinish(staticContent, dynamicContent) : ExceptionMessages.INVALID_STAGE_READY_TO_FINISH;
+        StorageMap purchaseRecordMap = getPurchaseRecordMap(projectId);
         ByteString purchaseId = projectId.concat(buyer.toByteString());
-        Integer value = projectPurchaseRecordMap.getInteger(purchaseId);
+        Integer value = purchaseRecordMap.getInteger(purchaseId);
         assert value != null && value > 0 : ExceptionMessages.RECORD_NOT_FOUND;
         // After get the purchase record, delete it.
         // Re-entry attack will get record not found exception at next call.
-        projectPurchaseRecordMap.delete(purchaseId);
+        purchaseRecordMap.delete(purchaseId);
+        buyerIndexMap.delete(buyer.toByteString().concat(projectId));
 
+        boolean counted = isCounted(projectId, 1);
         if (checkIfThresholdMet(staticContent, dynamicContent)) {
             // after the threshold
             Pair<Integer, Integer> buyerAndCreator = dynamicContent.partialRefund(staticContent, value);
-            transferTokenTo(staticContent.tokenHash, buyer, buyerAndCreator.first, identifier);
-            transferTokenTo(staticContent.tokenHash, staticContent.owner, buyerAndCreator.second, identifier);
+            // update buyer info before paying
+            ctx.hotCountersDirty = true;
+            flushContext(ctx);
+            payBuyer(staticContent, counted, buyer, buyerAndCreator.first, identifier);
+            payCreator(staticContent, counted, buyerAndCreator.second, identifier);
             onRefund.fire(buyer, identifier, buyerAndCreator.first, buyerAndCreator.second);
         } else {
             // full refund
             int amount = dynamicContent.fullRefund(value);
-            transferTokenTo(staticContent.tokenHash, buyer, amount, identifier);
+            // update buyer info before paying
+            ctx.hotCountersDirty = true;
+            flushContext(ctx);
+            payBuyer(staticContent, counted, buyer, amount, identifier);
             onRefund.fire(buyer, identifier, amount, 0);
         }
-        // update buyer info
-        updateDynamicContent(projectId, dynamicContent);
     }
 
     public static void cancelProject(String identifier) throws Exception {
-        ByteString projectId = getProjectId(identifier);
-        // Delete project id. Re-entry attack will fail since the id has been deleted.
-        projectIdentifierMap.delete(identifier);
-        // get obj and delete
-        ProjectStaticContent staticContent = getStaticContent(projectId);
-        projectStaticContentMap.delete(projectId);
-        ProjectDynamicContent dynamicContent = getDynamicContent(projectId);
-        projectDynamicContentMap.delete(projectId);
+        ProjectContext ctx = loadContext(identifier);
+        ByteString projectId = ctx.projectId;
+        ProjectStaticContent staticContent = ctx.staticContent;
+        ProjectDynamicContent dynamicContent = ctx.dynamicContent;
 
         // check signature
         assert Hash160.isValid(staticContent.owner) : ExceptionMessages.INVALID_HASH160;
@@ -416,37 +768,134 @@ public class WCAContract {
         // check status
         switch (dynamicContent.status) {
             case 0:
-                // PENDING, nothing to do
+                // PENDING, nothing to refund
+                deleteProject(identifier, projectId, staticContent, 0);
                 break;
             case 1:
                 // ONGOING, check threshold
                 assert !checkIfThresholdMet(staticContent, dynamicContent) : ExceptionMessages.INVALID_STAGE_ACTIVE;
+                // Update status first to prevent re-entry attack
+                dynamicContent.status = 3;
+                dynamicContent.lastUpdateTime = Runtime.getTime();
+                ctx.dynamicContentDirty = true;
+                flushContext(ctx);
+                updateStatus(identifier, projectId, staticContent, 1, 3);
+                deleteDeadlineIndex(projectId, staticContent);
                 // to creator
-                transferTokenTo(staticContent.tokenHash, staticContent.owner, staticContent.getTotalStake(), identifier);
-                // to buyers
-                ByteString prefix = new ByteString("PR").concat(projectId);
-                Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(CTX, prefix, FindOptions.RemovePrefix);
-                while (iter.next()) {
-                    Iterator.Struct<ByteString, ByteString> elem = iter.get();
-                    Hash160 buyer = new Hash160(elem.key);
-                    int purchaseAmount = elem.value.toIntOrZero();
-                    // delete record
-                    projectPurchaseRecordMap.delete(projectId.concat(buyer.toByteString()));
-                    transferTokenTo(staticContent.tokenHash, buyer, purchaseAmount, identifier);
+                payCreator(staticContent, isCounted(projectId, 3), staticContent.getTotalStake(), identifier);
+                // to buyers, the rest of them are handled by continueCancel
+                // the batch size bounds the cost, so no GAS reserve here
+                if (refundBuyers(identifier, projectId, staticContent, DEFAULT_CANCEL_BATCH_SIZE, 0)) {
+                    deleteProject(identifier, projectId, staticContent, 3);
                 }
                 break;
             default:
                 // Cancel is not available for the rest of status
                 throw new Exception(ExceptionMessages.INVALID_STATUS_ALLOW_PENDING_AND_ONGOING);
         }
-        // delete milestones
-        ByteString prefix = new ByteString("MS").concat(projectId);
-        Iterator<ByteString> iter = Storage.find(CTX, prefix, FindOptions.KeysOnly);
+    }
+
+    /**
+     * Continue refunding buyers of a CANCELLING project, at most maxBuyers per call.
+     * Stop earlier if the GAS left is lower than the reserve, see {@link #finishProjects(String[], int)}.
+     * Anyone can call this, the tokens always go to the buyers.
+     * When the last buyer is refunded, the project is deleted and CancelProject is fired.
+     *
+     * @return true if the cancellation is completed.
+     */
+    public static boolean continueCancel(String identifier, int maxBuyers, int gasReserve) {
+        assert maxBuyers > 0 : ExceptionMessages.INVALID_SIZE;
+        assert gasReserve >= 0 : ExceptionMessages.INVALID_AMOUNT;
+        ByteString projectId = loadProjectId(identifier);
+        ProjectStaticContent staticContent = getStaticContent(projectId);
+        ProjectDynamicContent dynamicContent = getDynamicContent(projectId);
+        assert dynamicContent.status == 3 : ExceptionMessages.INVALID_STATUS_ALLOW_CANCELLING;
+        if (refundBuyers(identifier, projectId, staticContent, maxBuyers, gasReserve)) {
+            deleteProject(identifier, projectId, staticContent, 3);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Add the given project to the secondary indexes.
+     * Projects declared before the indexes were introduced are not listed
+     * in them, the owner can use this to backfill them one by one.
+     * This will also migrate the project to the fixed-width id.
+     * <p>
+     * Such projects are not counted in the statistics either. They are counted
+     * from here, with the tokens the contract still holds for them, since the
+     * earlier payments and payouts were never recorded.
+     */
+    public static void indexProject(String identifier) {
+        assert Runtime.checkWitness(OWNER) : "The calling entity is not the owner of this contract.";
+        ByteString projectId = loadProjectId(identifier);
+        ProjectStaticContent staticContent = getStaticContent(projectId);
+        ProjectDynamicContent dynamicContent = getDynamicContent(projectId);
+        creatorIndexMap.put(staticContent.owner.toByteString().concat(projectId), identifier);
+        tokenIndexMap.put(staticContent.tokenHash.toByteString().concat(projectId), identifier);
+        int status = dynamicContent.status;
+        boolean counted = isCounted(projectId, status);
+        statusIndexMap.put(getStatusIndexKey(status, projectId), identifier);
+        if (status == 1) {
+            putDeadlineIndex(identifier, projectId, staticContent);
+        }
+        int remainPurchased = 0;
+        ByteString prefix = getPurchaseRecordPrefix(projectId);
+        Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(CTX, prefix, FindOptions.RemovePrefix);
         while (iter.next()) {
-            Storage.delete(CTX, iter.get());
+            Iterator.Struct<ByteString, ByteString> elem = iter.get();
+            if (elem.key.length() != HASH160_LENGTH) { // not this project
+                continue;
+            }
+            buyerIndexMap.put(elem.key.concat(projectId), identifier);
+            remainPurchased += elem.value.toIntOrZero();
+        }
+        if (counted) {
+            return;
         }
+        addToStats(staticContent.tokenHash, STAT_STATUS_BASE + status, 1);
+        if (status == 1) {
+            addToStats(staticContent.tokenHash, STAT_STAKED, staticContent.getTotalStake());
+            addToStats(staticContent.tokenHash, STAT_PURCHASED, dynamicContent.totalPurchasedAmount);
+        } else if (status == 2) {
+            // the reserve of claims, paid out as refunded and settled later
+            Integer pool = settlementPoolMap.getInteger(projectId);
+            addToStats(staticContent.tokenHash, STAT_PURCHASED, pool == null ? 0 : pool);
+        } else if (status == 3) {
+            // the stake is returned already, the buyers left are refunded later
+            addToStats(staticContent.tokenHash, STAT_PURCHASED, remainPurchased);
+        }
+    }
 
-        onCancelProject.fire(identifier);
+    /**
+     * Move the milestones of the given project into the schedule record and
+     * the proof of work keys. The reads fall back to the per milestone records,
+     * so this only saves reads and frees the old keys.
+     *
+     * @return how many milestones are moved, 0 if already moved or the project keeps a short id.
+     */
+    public static int migrateMilestones(String identifier) {
+        assert Runtime.checkWitness(OWNER) : "The calling entity is not the owner of this contract.";
+        ByteString projectId = loadProjectId(identifier);
+        if (projectId.length() != PROJECT_ID_LENGTH) {
+            // "PW" + a short id would cover the proofs of other projects,
+            // so short ids keep the per milestone records
+            return 0;
+        }
+        if (projectScheduleMap.get(projectId) != null) {
+            return 0;
+        }
+        ProjectMilestone[] milestones = getMilestones(projectId, getStaticContent(projectId));
+        projectScheduleMap.put(projectId, ProjectMilestone.scheduleToByteString(milestones));
+        for (int i = 0; i < milestones.length; i++) {
+            if (milestones[i].isFinished()) {
+                proofOfWorkMap.put(getMilestoneKey(projectId, i), milestones[i].proofOfWork);
+            }
+            projectMilestoneMap.delete(getMilestoneKey(projectId, i));
+            projectMilestoneMap.delete(getLegacyMilestoneKey(projectId, i));
+        }
+        return milestones.length;
     }
 
     public static void update(ByteString script, String manifest) {
@@ -473,53 +922,797 @@ public class WCAContract {
                 new Object[]{Runtime.getExecutingScriptHash(), target, amount, identifier});
     }
 
+    /**
+     * Transfer the project token back to a buyer, counted as refunded if the project is counted.
+     */
+    private static void payBuyer(
+            ProjectStaticContent staticContent, boolean counted, Hash160 buyer, int amount, String identifier
+    ) {
+        if (counted) {
+            addToStats(staticContent.tokenHash, STAT_REFUNDED, amount);
+        }
+        transferTokenTo(staticContent.tokenHash, buyer, amount, identifier);
+    }
+
+    /**
+     * Transfer the project token to the creator, counted as settled if the project is counted.
+     */
+    private static void payCreator(ProjectStaticContent staticContent, boolean counted, int amount, String identifier) {
+        if (counted) {
+            addToStats(staticContent.tokenHash, STAT_SETTLED, amount);
+        }
+        transferTokenTo(staticContent.tokenHash, staticContent.owner, amount, identifier);
+    }
+
+    /**
+     * Load the id, static and dynamic content of the project for this invocation.
+     * Milestones are loaded on demand by {@link #getContextMilestone(ProjectContext, int)}.
+     */
+    private static ProjectContext loadContext(String identifier) {
+        ByteString projectId = loadProjectId(identifier);
+        return new ProjectContext(identifier, projectId, loadStaticContent(projectId), getDynamicContent(projectId));
+    }
+
+    private static ProjectMilestone getContextMilestone(ProjectContext ctx, int index) {
+        if (!ctx.milestones.containsKey(index)) {
+            ctx.milestones.put(index, getMilestone(ctx.projectId, index));
+        }
+        return ctx.milestones.get(index);
+    }
+
+    /**
+     * Write the changed records back, each one exactly once.
+     * Must be called before calling other contracts, in case of re-entry.
+     */
+    private static void flushContext(ProjectContext ctx) {
+        if (ctx.dynamicContentDirty) {
+            updateDynamicContent(ctx.projectId, ctx.dynamicContent);
+            ctx.dynamicContentDirty = false;
+            if (ctx.dynamicContent.countersInRecord) {
+                // the old record is replaced, the counters it carried must go to their keys
+                ctx.hotCountersDirty = true;
+            }
+        }
+        if (ctx.hotCountersDirty) {
+            updateHotCounters(ctx.projectId, ctx.dynamicContent);
+            ctx.hotCountersDirty = false;
+            ctx.dynamicContent.countersInRecord = false;
+        }
+        if (ctx.dirtyMilestones.size() == 0) {
+            return;
+        }
+        boolean hasSchedule = projectScheduleMap.get(ctx.projectId) != null;
+        for (int i = 0; i < ctx.dirtyMilestones.size(); i++) {
+            int index = ctx.dirtyMilestones.get(i);
+            updateMilestone(ctx.projectId, hasSchedule, index, ctx.milestones.get(index));
+        }
+        ctx.dirtyMilestones.clear();
+    }
+
     /**
      * Check and get the id of the given identifier.
      * If identifier not exist, exception will be thrown.
      */
     private static ByteString getProjectId(String identifier) {
-        ByteString id = projectIdentifierMap.get(identifier);
+        ByteString id = findProjectId(identifier);
         assert id != null : ExceptionMessages.RECORD_NOT_FOUND;
         return id;
     }
 
+    /**
+     * Look up the id by the hashed key, then the raw identifier for old projects.
+     *
+     * @return null if not found.
+     */
+    private static ByteString findProjectId(String identifier) {
+        ByteString id = projectIdentifierMap.get(getIdentifierKey(identifier));
+        if (id == null) {
+            id = projectIdentifierMap.get(identifier);
+        }
+        return id;
+    }
+
+    /**
+     * The key of identifier in projectIdentifierMap, so the key size
+     * doesn't depend on the identifier.
+     */
+    private static ByteString getIdentifierKey(String identifier) {
+        return CryptoLib.sha256(new ByteString(identifier)).take(IDENTIFIER_KEY_LENGTH);
+    }
+
+    /**
+     * The identifier of a project listed from projectIdentifierMap.
+     * The hashed key can't be reversed, so it's kept in the static content.
+     */
+    private static String getListedIdentifier(ByteString key, ProjectStaticContent staticContent) {
+        if (staticContent.identifier != null) {
+            return staticContent.identifier;
+        }
+        // old projects, the key is the raw identifier
+        return key.toString();
+    }
+
+    /**
+     * Same as {@link #getProjectId(String)}, but the project will be migrated
+     * to the hashed identifier key and the fixed-width id if it's declared before them.
+     * Only use this when the storage is writable.
+     */
+    private static ByteString loadProjectId(String identifier) {
+        ByteString key = getIdentifierKey(identifier);
+        ByteString id = projectIdentifierMap.get(key);
+        if (id != null) {
+            // hashed keys are introduced after the fixed-width ids,
+            // short ids here are the ones kept by migrateProjectId
+            return id;
+        }
+        id = projectIdentifierMap.get(identifier);
+        assert id != null : ExceptionMessages.RECORD_NOT_FOUND;
+        return migrateIdentifier(identifier, id);
+    }
+
+    /**
+     * Move the project found by the raw identifier to the hashed key,
+     * along with the fixed-width id and the compact static content.
+     *
+     * @return the id of the project after the migration.
+     */
+    private static ByteString migrateIdentifier(String identifier, ByteString id) {
+        ByteString key = getIdentifierKey(identifier);
+        projectIdentifierMap.delete(identifier);
+        if (id.length() != PROJECT_ID_LENGTH) {
+            // the short id is kept if there are too many records to move
+            id = migrateProjectId(identifier, id);
+        }
+        projectIdentifierMap.put(key, id);
+        // keep the identifier in the static content, so we can still list it
+        ProjectStaticContent staticContent = getStaticContent(id);
+        staticContent.identifier = identifier;
+        projectStaticContentMap.put(id, staticContent.toByteString());
+        return id;
+    }
+
+    /**
+     * Move everything of the project from the old variable-length id to the fixed-width one.
+     * At most {@link #MIGRATE_RECORD_LIMIT} purchase records are moved to keep the cost bounded.
+     * If there are more, nothing is moved and the project keeps the old id,
+     * which works all the same since the scans check the length of keys.
+     * The old prefix also covers the records of other short ids, they are skipped
+     * and not counted. No new project gets a short id, so there are no more of them.
+     *
+     * @return the new id, or the old one if not migrated.
+     */
+    private static ByteString migrateProjectId(String identifier, ByteString id) {
+        // purchase records, collect them first so nothing is moved if there are too many
+        List<Iterator.Struct<ByteString, ByteString>> records = new List<>();
+        Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(
+                CTX, new ByteString("PR").concat(id), FindOptions.RemovePrefix);
+        while (iter.next()) {
+            Iterator.Struct<ByteString, ByteString> elem = iter.get();
+            if (elem.key.length() != HASH160_LENGTH) { // not this project
+                continue;
+            }
+            if (records.size() == MIGRATE_RECORD_LIMIT) {
+                return id;
+            }
+            records.add(elem);
+        }
+        ByteString newId = Utils.intToPaddingByteString(id.toInt(), PROJECT_ID_LENGTH);
+        // static and dynamic content
+        ByteString staticData = projectStaticContentMap.get(id);
+        projectStaticContentMap.put(newId, staticData);
+        projectStaticContentMap.delete(id);
+        projectDynamicContentMap.put(newId, projectDynamicContentMap.get(id));
+        projectDynamicContentMap.delete(id);
+        // milestones
+        ProjectStaticContent staticContent = ProjectStaticContent.fromByteString(staticData);
+        for (int i = 0; i < staticContent.milestoneCount; i++) {
+            ByteString milestone = projectMilestoneMap.get(getLegacyMilestoneKey(id, i));
+            projectMilestoneMap.put(getMilestoneKey(newId, i), milestone);
+            projectMilestoneMap.delete(getLegacyMilestoneKey(id, i));
+        }
+        // indexes
+        creatorIndexMap.delete(staticContent.owner.toByteString().concat(id));
+        creatorIndexMap.put(staticContent.owner.toByteString().concat(newId), identifier);
+        tokenIndexMap.delete(staticContent.tokenHash.toByteString().concat(id));
+        tokenIndexMap.put(staticContent.tokenHash.toByteString().concat(newId), identifier);
+        for (int i = 0; i < records.size(); i++) {
+            Iterator.Struct<ByteString, ByteString> elem = records.get(i);
+            legacyPurchaseRecordMap.delete(id.concat(elem.key));
+            projectPurchaseRecordMap.put(newId.concat(elem.key), elem.value);
+            buyerIndexMap.delete(elem.key.concat(id));
+            buyerIndexMap.put(elem.key.concat(newId), identifier);
+        }
+        return newId;
+    }
+
+    /**
+     * Record a purchase from the buyer.
+     * Only the hot counters are changed, the dynamic content record is left alone.
+     * The statistics are left to the caller, so a batch adds them once.
+     */
+    private static void purchase(Hash160 buyer, ProjectContext ctx, int amount) {
+        ProjectStaticContent staticContent = ctx.staticContent;
+        ProjectDynamicContent dynamicContent = ctx.dynamicContent;
+        assert dynamicContent.status == 1 : ExceptionMessages.INVALID_STATUS_ALLOW_ONGOING;
+        assert !checkIfReadyToFinish(staticContent, dynamicContent) : ExceptionMessages.INVALID_STAGE_READY_TO_FINISH;
+        assert dynamicContent.remainTokenCount >= amount : ExceptionMessages.INSUFFICIENT_AMOUNT_REMAIN;
+        dynamicContent.remainTokenCount -= amount;
+        dynamicContent.totalPurchasedAmount += amount;
+        // update purchase record
+        StorageMap purchaseRecordMap = getPurchaseRecordMap(ctx.projectId);
+        ByteString purchaseId = ctx.projectId.concat(buyer.toByteString());
+        Integer value = purchaseRecordMap.getInteger(purchaseId);
+        if (value == null) { // new purchase
+            dynamicContent.buyerCounter++;
+            buyerIndexMap.put(buyer.toByteString().concat(ctx.projectId), ctx.identifier);
+            value = 0;
+        }
+        value += amount;
+        purchaseRecordMap.put(purchaseId, value);
+        ctx.hotCountersDirty = true;
+        onPurchaseProject.fire(buyer, ctx.identifier, amount);
+    }
+
+    /**
+     * Pay the finish refund to the buyer, and the rest of reserved tokens
+     * to creator if this is the last one.
+     *
+     * @return false if there is nothing to claim.
+     */
+    private static boolean claimFor(
+            String identifier, ByteString projectId,
+            ProjectStaticContent staticContent, ProjectDynamicContent dynamicContent, Hash160 buyer
+    ) {
+        Integer pool = settlementPoolMap.getInteger(projectId);
+        if (pool == null) {
+            // all milestones are finished, or all buyers are claimed
+            return false;
+        }
+        ByteString purchaseId = projectId.concat(buyer.toByteString());
+        Integer value = getPurchaseRecordMap(projectId).getInteger(purchaseId);
+        if (value == null || claimedMap.get(purchaseId) != null) {
+            return false;
+        }
+        int amount = dynamicContent.finishRefund(staticContent, value);
+        // Mark it first to prevent re-entry attack
+        claimedMap.put(purchaseId, amount);
+        pool -= amount;
+        int unclaimed = settlementBuyerMap.getInteger(projectId) - 1;
+        if (unclaimed == 0) {
+            settlementPoolMap.delete(projectId);
+            settlementBuyerMap.delete(projectId);
+        } else {
+            settlementPoolMap.put(projectId, pool);
+            settlementBuyerMap.put(projectId, unclaimed);
+        }
+        boolean counted = isCounted(projectId, 2);
+        if (amount > 0) {
+            payBuyer(staticContent, counted, buyer, amount, identifier);
+        }
+        onClaim.fire(buyer, identifier, amount);
+        if (unclaimed == 0 && pool > 0) {
+            payCreator(staticContent, counted, pool, identifier);
+        }
+        return true;
+    }
+
+    /**
+     * Refund at most maxBuyers buyers of a cancelling project, stop earlier
+     * if the GAS left is lower than the reserve. Purchase records are deleted
+     * once refunded, so the remaining records work as the cursor of the next call.
+     *
+     * @return true if there is no buyer left.
+     */
+    private static boolean refundBuyers(
+            String identifier, ByteString projectId, ProjectStaticContent staticContent, int maxBuyers, int reserve
+    ) {
+        boolean counted = isCounted(projectId, 3);
+        StorageMap purchaseRecordMap = getPurchaseRecordMap(projectId);
+        ByteString prefix = getPurchaseRecordPrefix(projectId);
+        Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(CTX, prefix, FindOptions.RemovePrefix);
+        int count = 0;
+        while (iter.next()) {
+            Iterator.Struct<ByteString, ByteString> elem = iter.get();
+            if (elem.key.length() != HASH160_LENGTH) { // not this project
+                continue;
+            }
+            if (count == maxBuyers || isGasLow(reserve)) {
+                return false;
+            }
+            Hash160 buyer = new Hash160(elem.key);
+            int purchaseAmount = elem.value.toIntOrZero();
+            // delete record
+            purchaseRecordMap.delete(projectId.concat(buyer.toByteString()));
+            buyerIndexMap.delete(buyer.toByteString().concat(projectId));
+            payBuyer(staticContent, counted, buyer, purchaseAmount, identifier);
+            count++;
+        }
+        return true;
+    }
+
+    /**
+     * Delete everything of a cancelled project, and fire the CancelProject event.
+     */
+    private static void deleteProject(
+            String identifier, ByteString projectId, ProjectStaticContent staticContent, int status
+    ) {
+        projectIdentifierMap.delete(getIdentifierKey(identifier));
+        projectStaticContentMap.delete(projectId);
+        projectDynamicContentMap.delete(projectId);
+        projectRemainTokenMap.delete(projectId);
+        projectPurchasedAmountMap.delete(projectId);
+        projectBuyerCounterMap.delete(projectId);
+        creatorIndexMap.delete(staticContent.owner.toByteString().concat(projectId));
+        tokenIndexMap.delete(staticContent.tokenHash.toByteString().concat(projectId));
+        if (isCounted(projectId, status)) {
+            statusIndexMap.delete(getStatusIndexKey(status, projectId));
+            addToStats(staticContent.tokenHash, STAT_STATUS_BASE + status, -1);
+        }
+        // delete milestones
+        if (projectScheduleMap.get(projectId) != null) {
+            projectScheduleMap.delete(projectId);
+            for (int i = 0; i < staticContent.milestoneCount; i++) {
+                proofOfWorkMap.delete(getMilestoneKey(projectId, i));
+            }
+        } else {
+            for (int i = 0; i < staticContent.milestoneCount; i++) {
+                projectMilestoneMap.delete(getMilestoneKey(projectId, i));
+                projectMilestoneMap.delete(getLegacyMilestoneKey(projectId, i));
+            }
+        }
+
+        onCancelProject.fire(identifier);
+    }
+
+    private static void putDeadlineIndex(String identifier, ByteString projectId, ProjectStaticContent staticContent) {
+        lastExpireIndexMap.put(getDeadlineIndexKey(staticContent.lastMilestoneExpireTime, projectId), identifier);
+        thresholdExpireIndexMap.put(getDeadlineIndexKey(staticContent.thresholdMilestoneExpireTime, projectId), identifier);
+    }
+
+    private static void deleteDeadlineIndex(ByteString projectId, ProjectStaticContent staticContent) {
+        lastExpireIndexMap.delete(getDeadlineIndexKey(staticContent.lastMilestoneExpireTime, projectId));
+        thresholdExpireIndexMap.delete(getDeadlineIndexKey(staticContent.thresholdMilestoneExpireTime, projectId));
+    }
+
+    private static ByteString getDeadlineIndexKey(int timestamp, ByteString projectId) {
+        return Utils.intToBigEndianByteString(timestamp, StorageCodec.TIME_LENGTH).concat(projectId);
+    }
+
+    /**
+     * List a deadline index from the entry after the cursor, stop at the first
+     * entry which expires after the timestamp.
+     * <p>
+     * The first page is a single Storage.find over the index, from the earliest entry.
+     * Storage.find can only seek to a prefix, and the leading bytes of timestamps
+     * rarely change, so a page resumed from a cursor seeks by windows of
+     * {@link #DEADLINE_WINDOW_BITS}: the window of the cursor first, then the
+     * following ones, one Storage.find each. It reads the skipped part of the
+     * window of the cursor, and stops after {@link #MAX_EMPTY_DEADLINE_WINDOWS}
+     * windows without entries, returning a cursor to go on from the next window.
+     * So a page may have less than size entries while there are more left.
+     */
+    private static Pair<List<String>, ByteString> listDeadlineIndex(
+            ByteString prefix, int timestamp, ByteString cursor, int size
+    ) {
+        assert size >= 1 : ExceptionMessages.INVALID_SIZE;
+        ByteString end = Utils.intToBigEndianByteString(timestamp, StorageCodec.TIME_LENGTH);
+        List<String> result = new List<>();
+        if (cursor == null || cursor.length() == 0) {
+            // an empty cursor starts from the beginning again
+            ByteString last = new ByteString(new byte[0]);
+            Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(CTX, prefix, FindOptions.RemovePrefix);
+            while (iter.next()) {
+                Iterator.Struct<ByteString, ByteString> elem = iter.get();
+                if (!Utils.lessOrEqual(elem.key.take(StorageCodec.TIME_LENGTH), end)) {
+                    // expires after the timestamp, so are the rest of them
+                    return new Pair<>(result, null);
+                }
+                if (result.size() == size || isGasLow(QUERY_GAS_RESERVE)) {
+                    return new Pair<>(result, last);
+                }
+                last = elem.key;
+                result.add(elem.value.toString());
+            }
+            return new Pair<>(result, null);
+        }
+        int lastWindow = timestamp >> DEADLINE_WINDOW_BITS;
+        int window = Utils.bigEndianByteStringToInt(cursor.take(StorageCodec.TIME_LENGTH)) >> DEADLINE_WINDOW_BITS;
+        int emptyWindows = 0;
+        for (; window <= lastWindow; window++) {
+            ByteString windowStart = Utils.intToBigEndianByteString(window << DEADLINE_WINDOW_BITS, StorageCodec.TIME_LENGTH);
+            if (emptyWindows == MAX_EMPTY_DEADLINE_WINDOWS || isGasLow(QUERY_GAS_RESERVE)) {
+                // continue from this window, the ones before are done
+                return new Pair<>(result, Utils.lessOrEqual(windowStart, cursor) ? cursor : windowStart);
+            }
+            boolean empty = true;
+            ByteString windowPrefix = prefix.concat(windowStart.take(DEADLINE_WINDOW_LENGTH));
+            Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(CTX, windowPrefix, FindOptions.None);
+            while (iter.next()) {
+                Iterator.Struct<ByteString, ByteString> elem = iter.get();
+                ByteString key = elem.key.last(elem.key.length() - prefix.length());
+                if (Utils.lessOrEqual(key, cursor)) {
+                    continue;
+                }
+                if (!Utils.lessOrEqual(key.take(StorageCodec.TIME_LENGTH), end)) {
+                    return new Pair<>(result, null);
+                }
+                if (result.size() == size) {
+                    return new Pair<>(result, cursor);
+                }
+                empty = false;
+                cursor = key;
+                result.add(elem.value.toString());
+            }
+            if (empty) {
+                emptyWindows++;
+            }
+        }
+        return new Pair<>(result, null);
+    }
+
+    /**
+     * Set the project to FINISHED, pay the creator and reserve the refund for buyers.
+     * All checks must be done before calling this.
+     */
+    private static void settleProject(ProjectContext ctx) {
+        String identifier = ctx.identifier;
+        ByteString projectId = ctx.projectId;
+        ProjectStaticContent staticContent = ctx.staticContent;
+        ProjectDynamicContent dynamicContent = ctx.dynamicContent;
+        // Update status first to prevent re-entry attack
+        dynamicContent.status = 2;
+        dynamicContent.lastUpdateTime = Runtime.getTime();
+        ctx.dynamicContentDirty = true;
+        flushContext(ctx);
+        updateStatus(identifier, projectId, staticContent, 1, 2);
+        deleteDeadlineIndex(projectId, staticContent);
+        // At this time, the project is finished, no more operation is allowed
+
+        int remainTokens = staticContent.getTotalStake() + dynamicContent.totalPurchasedAmount;
+        // If there are unfinished milestone, buyers get their part back by claim.
+        // Reserve the upper bound of it, the dust goes to creator after the last claim.
+        if (staticContent.milestoneCount != dynamicContent.finishedMilestoneCount
+                && dynamicContent.buyerCounter != 0) {
+            int reserved = dynamicContent.finishRefundReserve(staticContent);
+            if (reserved > remainTokens) {
+                reserved = remainTokens;
+            }
+            settlementPoolMap.put(projectId, reserved);
+            settlementBuyerMap.put(projectId, dynamicContent.buyerCounter);
+            remainTokens -= reserved;
+        }
+        // return the rest of total tokens to creator
+        if (remainTokens > 0) {
+            payCreator(staticContent, isCounted(projectId, 2), remainTokens, identifier);
+        }
+        onFinishProject.fire(identifier);
+    }
+
+    private static ByteString getStatusIndexKey(int status, ByteString projectId) {
+        return Utils.byteToByteString(status).concat(projectId);
+    }
+
+    /**
+     * Move the project in the status index and the status counts of its token.
+     * Projects not indexed yet are left alone, {@link #indexProject(String)} counts them.
+     */
+    private static void updateStatus(
+            String identifier, ByteString projectId, ProjectStaticContent staticContent, int oldStatus, int newStatus
+    ) {
+        if (!isCounted(projectId, oldStatus)) {
+            return;
+        }
+        statusIndexMap.delete(getStatusIndexKey(oldStatus, projectId));
+        statusIndexMap.put(getStatusIndexKey(newStatus, projectId), identifier);
+        addToStats(staticContent.tokenHash, STAT_STATUS_BASE + oldStatus, -1);
+        addToStats(staticContent.tokenHash, STAT_STATUS_BASE + newStatus, 1);
+    }
+
+    /**
+     * Projects declared before the statistics are counted once they are in the status index.
+     */
+    private static boolean isCounted(ByteString projectId, int status) {
+        return statusIndexMap.get(getStatusIndexKey(status, projectId)) != null;
+    }
+
+    private static ByteString getStatsKey(Hash160 token, int field) {
+        return token.toByteString().concat(Utils.byteToByteString(field));
+    }
+
+    private static int getStatsField(Hash160 token, int field) {
+        Integer value = tokenStatsMap.getInteger(getStatsKey(token, field));
+        return value == null ? 0 : value;
+    }
+
+    private static void addToStats(Hash160 token, int field, int delta) {
+        tokenStatsMap.put(getStatsKey(token, field), getStatsField(token, field) + delta);
+    }
+
+    private static boolean isFilterSet(Hash160 filter) {
+        return filter != null && filter != Hash160.zero();
+    }
+
+    /**
+     * Pick the narrowest storage area to walk for the given filters.
+     * Index entries are keyed by projectId and valued by identifier,
+     * while the "ID" map is the other way around.
+     */
+    private static ByteString advanceQueryPrefix(Hash160 creator, Hash160 buyer, Hash160 token) {
+        if (isFilterSet(creator)) {
+            return new ByteString("IC").concat(creator.toByteString());
+        } else if (isFilterSet(buyer)) {
+            return new ByteString("IB").concat(buyer.toByteString());
+        } else if (isFilterSet(token)) {
+            return new ByteString("IT").concat(token.toByteString());
+        } else {
+            return new ByteString("ID");
+        }
+    }
+
+    /**
+     * The cursor loop shared by {@link #advanceQueryProtoByCursor} and {@link #advanceQuerySummaryByCursor}.
+     *
+     * @param summary true for {@link ProjectSummaryPojo}, false for {@link ProjectPojo}, which must be T.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Pair<List<T>, ByteString> advanceQueryByCursor(
+            Hash160 token, Hash160 creator, Hash160 buyer, ByteString cursor, int size, boolean summary
+    ) {
+        assert size >= 1 : ExceptionMessages.INVALID_SIZE;
+        ByteString prefix = advanceQueryPrefix(creator, buyer, token);
+        boolean byIndex = isFilterSet(creator) || isFilterSet(buyer) || isFilterSet(token);
+        if (isFilterSet(buyer) && !isFilterSet(creator)) {
+            // already walking the buyer index
+            buyer = null;
+        }
+        List<T> result = new List<>();
+        while (result.size() < size) {
+            int batchSize = size - result.size();
+            Pair<List<Pair<ByteString, ByteString>>, ByteString> page = StorageCursor.findAfter(CTX, prefix, cursor, batchSize, QUERY_GAS_RESERVE);
+            List<Pair<ByteString, ByteString>> entries = page.first;
+            for (int i = 0; i < entries.size(); i++) {
+                if (isGasLow(QUERY_GAS_RESERVE)) {
+                    return new Pair<>(result, continuation(cursor));
+                }
+                Pair<ByteString, ByteString> elem = entries.get(i);
+                // the cursor is the last key we looked at, listed or not
+                cursor = elem.first;
+                T pojo = summary
+                        ? (T) advanceQuerySummaryFilter(elem.first, elem.second, byIndex, token, creator, buyer)
+                        : (T) advanceQueryFilter(elem.first, elem.second, byIndex, token, creator, buyer);
+                if (pojo != null) {
+                    result.add(pojo);
+                }
+            }
+            cursor = page.second;
+            if (entries.size() < batchSize) {
+                // nothing left, or stopped for the finds or GAS
+                break;
+            }
+        }
+        return new Pair<>(result, cursor);
+    }
+
+    /**
+     * Build the pojo of the given entry if the project passes all filters.
+     *
+     * @return null if the project is not public or filtered out.
+     */
+    private static ProjectPojo advanceQueryFilter(
+            ByteString key, ByteString value, boolean byIndex,
+            Hash160 token, Hash160 creator, Hash160 buyer
+    ) {
+        ByteString projectId = byIndex ? key : value;
+        ProjectStaticContent staticContent = advanceQueryMatch(projectId, token, creator, buyer);
+        if (staticContent == null) {
+            return null;
+        }
+        String identifier = byIndex ? value.toString() : getListedIdentifier(key, staticContent);
+        ProjectMilestone[] milestonesInfo = getMilestones(projectId, staticContent);
+        ProjectDynamicContent dynamicContent = getDynamicContent(projectId);
+        return new ProjectPojo(identifier, staticContent, dynamicContent, milestonesInfo);
+    }
+
+    /**
+     * Summary version of {@link #advanceQueryFilter}.
+     */
+    private static ProjectSummaryPojo advanceQuerySummaryFilter(
+            ByteString key, ByteString value, boolean byIndex,
+            Hash160 token, Hash160 creator, Hash160 buyer
+    ) {
+        ByteString projectId = byIndex ? key : value;
+        ProjectStaticContent staticContent = advanceQueryMatch(projectId, token, creator, buyer);
+        if (staticContent == null) {
+            return null;
+        }
+        String identifier = byIndex ? value.toString() : getListedIdentifier(key, staticContent);
+        return new ProjectSummaryPojo(identifier, staticContent, getDynamicContent(projectId));
+    }
+
+    /**
+     * @return the static content if the project is public and matches the filters, otherwise null.
+     */
+    private static ProjectStaticContent advanceQueryMatch(
+            ByteString projectId, Hash160 token, Hash160 creator, Hash160 buyer
+    ) {
+        ProjectStaticContent staticContent = getStaticContent(projectId);
+        if (!staticContent.bePublic) {
+            return null;
+        }
+        if (isFilterSet(token) && staticContent.tokenHash != token) {
+            return null;
+        }
+        if (isFilterSet(creator) && staticContent.owner != creator) {
+            return null;
+        }
+        if (isFilterSet(buyer) && buyerIndexMap.get(buyer.toByteString().concat(projectId)) == null) {
+            return null;
+        }
+        return staticContent;
+    }
+
+    private static boolean isGasLow(int reserve) {
+        return Runtime.getGasLeft() < reserve;
+    }
+
+    /**
+     * The cursor returned when a scan stops for GAS. Null means there is
+     * nothing left, so an empty one is returned to start from the beginning.
+     */
+    private static ByteString continuation(ByteString cursor) {
+        return cursor == null ? new ByteString(new byte[0]) : cursor;
+    }
+
     private static ProjectStaticContent getStaticContent(ByteString projectId) {
         ByteString data = projectStaticContentMap.get(projectId);
-        return (ProjectStaticContent) StdLib.deserialize(data);
+        return ProjectStaticContent.fromByteString(data);
     }
 
+    /**
+     * Same as {@link #getStaticContent(ByteString)}, but the record will be
+     * rewritten in the compact layout if it's still the old one.
+     * The static content is never updated, so upgrade it when it's first touched.
+     * Only use this when the storage is writable.
+     */
+    private static ProjectStaticContent loadStaticContent(ByteString projectId) {
+        ByteString data = projectStaticContentMap.get(projectId);
+        ProjectStaticContent staticContent = ProjectStaticContent.fromByteString(data);
+        if (StorageCodec.isLegacy(data)) {
+            projectStaticContentMap.put(projectId, staticContent.toByteString());
+        }
+        return staticContent;
+    }
+
+    /**
+     * Get the dynamic content along with its hot counters.
+     * Old records are upgraded when they are written back.
+     */
     private static ProjectDynamicContent getDynamicContent(ByteString projectId) {
         ByteString data = projectDynamicContentMap.get(projectId);
-        return (ProjectDynamicContent) StdLib.deserialize(data);
+        ProjectDynamicContent dynamicContent = ProjectDynamicContent.fromByteString(data);
+        // Old records carry the counters, use them until the separated key is written
+        Integer value = projectRemainTokenMap.getInteger(projectId);
+        if (value != null) {
+            dynamicContent.remainTokenCount = value;
+            dynamicContent.countersInRecord = false;
+        }
+        value = projectPurchasedAmountMap.getInteger(projectId);
+        if (value != null) {
+            dynamicContent.totalPurchasedAmount = value;
+        }
+        value = projectBuyerCounterMap.getInteger(projectId);
+        if (value != null) {
+            dynamicContent.buyerCounter = value;
+        }
+        return dynamicContent;
     }
 
-    private static ProjectMilestone getMilestone(ByteString projectId, int index) {
-        // Since projectId has no fixed length, thus milestone index must have fixed length
+    /**
+     * Short ids kept by {@link #migrateProjectId(String, ByteString)} stay in the old map.
+     */
+    private static StorageMap getPurchaseRecordMap(ByteString projectId) {
+        return projectId.length() == PROJECT_ID_LENGTH ? projectPurchaseRecordMap : legacyPurchaseRecordMap;
+    }
+
+    /**
+     * The prefix of the purchase records of the project, see {@link #getPurchaseRecordMap(ByteString)}.
+     */
+    private static ByteString getPurchaseRecordPrefix(ByteString projectId) {
+        return new ByteString(projectId.length() == PROJECT_ID_LENGTH ? "PP" : "PR").concat(projectId);
+    }
+
+    private static ByteString getMilestoneKey(ByteString projectId, int index) {
+        // projectId has fixed length, so a short fixed-length index is enough.
+        // Short ids kept by migrateProjectId give keys of other lengths, they don't collide either.
+        return projectId.concat(Utils.intToPaddingByteString(index, MILESTONE_INDEX_LENGTH));
+    }
+
+    /**
+     * The milestone key used before {@link #getMilestoneKey(ByteString, int)}.
+     */
+    private static ByteString getLegacyMilestoneKey(ByteString projectId, int index) {
+        // Old projectId has no fixed length, thus milestone index must have fixed length
         // otherwise there will be [010][1010] = [0101][010]
-        ByteString data = projectMilestoneMap.get(
-                projectId.concat(Utils.intToPaddingByteString(index, 20)));
+        return projectId.concat(Utils.intToPaddingByteString(index, 20));
+    }
+
+    private static ProjectMilestone getMilestone(ByteString projectId, int index) {
+        ByteString schedule = projectScheduleMap.get(projectId);
+        if (schedule != null) {
+            ProjectMilestone[] milestones = ProjectMilestone.scheduleFromByteString(schedule);
+            if (index < 0 || index >= milestones.length) {
+                return null;
+            }
+            ByteString proofOfWork = proofOfWorkMap.get(getMilestoneKey(projectId, index));
+            if (proofOfWork != null) {
+                milestones[index].proofOfWork = proofOfWork.toString();
+            }
+            return milestones[index];
+        }
+        // declared before the schedule record
+        ByteString data = projectMilestoneMap.get(getMilestoneKey(projectId, index));
+        if (data == null) {
+            // not migrated yet
+            data = projectMilestoneMap.get(getLegacyMilestoneKey(projectId, index));
+        }
         if (data == null) {
             return null;
         }
-        return (ProjectMilestone) StdLib.deserialize(data);
+        return ProjectMilestone.fromByteString(data);
     }
 
+    /**
+     * One read for the schedule, plus a scan over the proofs of finished milestones.
+     */
     private static ProjectMilestone[] getMilestones(ByteString projectId, ProjectStaticContent staticContent) {
-        ProjectMilestone[] result = new ProjectMilestone[staticContent.milestoneCount];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = getMilestone(projectId, i);
+        ByteString schedule = projectScheduleMap.get(projectId);
+        ProjectMilestone[] result;
+        if (schedule == null) {
+            // declared before the schedule record
+            result = new ProjectMilestone[staticContent.milestoneCount];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = getMilestone(projectId, i);
+            }
+            return result;
+        }
+        result = ProjectMilestone.scheduleFromByteString(schedule);
+        ByteString prefix = new ByteString("PW").concat(projectId);
+        Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(CTX, prefix, FindOptions.RemovePrefix);
+        while (iter.next()) {
+            Iterator.Struct<ByteString, ByteString> elem = iter.get();
+            if (elem.key.length() != MILESTONE_INDEX_LENGTH) { // not this project
+                continue;
+            }
+            result[elem.key.toInt()].proofOfWork = elem.value.toString();
         }
         return result;
     }
 
+    /**
+     * Write the dynamic content record, hot counters are not included.
+     * Use {@link #flushContext(ProjectContext)}, which also writes the counters of old records.
+     */
     private static void updateDynamicContent(ByteString projectId, ProjectDynamicContent data) {
-        projectDynamicContentMap.put(projectId, StdLib.serialize(data));
+        projectDynamicContentMap.put(projectId, data.toByteString());
     }
 
-    private static void updateMilestone(ByteString projectId, int index, ProjectMilestone data) {
-        projectMilestoneMap.put(
-                projectId.concat(Utils.intToPaddingByteString(index, 20)),
-                StdLib.serialize(data)
-        );
+    private static void updateHotCounters(ByteString projectId, ProjectDynamicContent data) {
+        projectRemainTokenMap.put(projectId, data.remainTokenCount);
+        projectPurchasedAmountMap.put(projectId, data.totalPurchasedAmount);
+        projectBuyerCounterMap.put(projectId, data.buyerCounter);
+    }
+
+    /**
+     * Only the proof of work is changed after declaring the project.
+     * Projects declared before the schedule record still write the whole milestone.
+     *
+     * @param hasSchedule if the project has the schedule record, read once by the caller.
+     */
+    private static void updateMilestone(ByteString projectId, boolean hasSchedule, int index, ProjectMilestone data) {
+        if (hasSchedule) {
+            proofOfWorkMap.put(getMilestoneKey(projectId, index), data.proofOfWork);
+        } else {
+            projectMilestoneMap.put(getMilestoneKey(projectId, index), data.toByteString());
+        }
     }
 }
@@ -19,6 +19,12 @@ public class ExceptionMessages {
     public static final String INVALID_STATUS_ALLOW_ONGOING =
             "Invalid status. Only ONGOING is allowed.";
 
+    public static final String INVALID_STATUS_ALLOW_FINISHED =
+            "Invalid status. Only FINISHED is allowed.";
+
+    public static final String INVALID_STATUS_ALLOW_CANCELLING =
+            "Invalid status. Only CANCELLING is allowed.";
+
     public static final String INVALID_STATUS_ALLOW_PENDING_AND_ONGOING =
             "Invalid status. Only PENDING and ONGOING is allowed.";
 
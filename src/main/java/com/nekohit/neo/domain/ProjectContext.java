@@ -0,0 +1,58 @@
+package com.nekohit.neo.domain;
+
+import io.neow3j.devpack.ByteString;
+import io.neow3j.devpack.List;
+import io.neow3j.devpack.Map;
+
+/**
+ * The records of a project loaded in one invocation.
+ * Each record is loaded once, changed ones are marked as dirty,
+ * and WCAContract writes them back once when flushing the context.
+ */
+public class ProjectContext {
+    public final String identifier;
+
+    public final ByteString projectId;
+
+    public final ProjectStaticContent staticContent;
+
+    public final ProjectDynamicContent dynamicContent;
+
+    /**
+     * Milestones loaded so far, index -> milestone.
+     */
+    public final Map<Integer, ProjectMilestone> milestones;
+
+    /**
+     * Indexes of the changed milestones.
+     */
+    public final List<Integer> dirtyMilestones;
+
+    /**
+     * The dynamic content record is changed.
+     */
+    public boolean dynamicContentDirty;
+
+    /**
+     * The hot counters (remain, purchased, buyer count) are changed.
+     */
+    public boolean hotCountersDirty;
+
+    public ProjectContext(
+            String identifier, ByteString projectId,
+            ProjectStaticContent staticContent, ProjectDynamicContent dynamicContent
+    ) {
+        this.identifier = identifier;
+        this.projectId = projectId;
+        this.staticContent = staticContent;
+        this.dynamicContent = dynamicContent;
+        this.milestones = new Map<>();
+        this.dirtyMilestones = new List<>();
+        this.dynamicContentDirty = false;
+        this.hotCountersDirty = false;
+    }
+
+    public void markMilestoneDirty(int index) {
+        this.dirtyMilestones.add(index);
+    }
+}
@@ -1,21 +1,28 @@
 package com.nekohit.neo.domain;
 
+import com.nekohit.neo.helper.ByteReader;
+import com.nekohit.neo.helper.ByteWriter;
 import com.nekohit.neo.helper.Pair;
+import io.neow3j.devpack.ByteString;
+import io.neow3j.devpack.contracts.StdLib;
 
 public class ProjectDynamicContent {
     /**
      * How many tokens remained for sale.
+     * Hot counter, stored in a separate key.
      */
     public int remainTokenCount;
 
     /**
      * How many tokens have already been purchased.
+     * Hot counter, stored in a separate key.
      */
     public int totalPurchasedAmount;
 
     /**
      * How many addresses have been made the purchase.
      * Refund addressed are excluded.
+     * Hot counter, stored in a separate key.
      */
     public int buyerCounter;
 
@@ -44,26 +51,27 @@ public class ProjectDynamicContent {
      */
     public int nextMilestoneIndex;
 
-    // Preserved for future use
-    public Object preserved0 = null;
-    public Object preserved1 = null;
-    public Object preserved2 = null;
-    public Object preserved3 = null;
-    public Object preserved4 = null;
-    public Object preserved5 = null;
-    public Object preserved6 = null;
-    public Object preserved7 = null;
-    public Object preserved8 = null;
-    public Object preserved9 = null;
+    /**
+     * Extension slot, preserved for future use.
+     * Kept as is when the record is read and written back.
+     */
+    public ByteString extension = null;
 
     /**
      * Status of this project.<br>
      * 0 - PENDING, the initialized status, only payStake and cancel is allowed.<br>
      * 1 - ONGOING, from PENDING, after pay the stake, ready to operate.<br>
      * 2 - FINISHED, from ONGOING, after creator finish this project.<br>
+     * 3 - CANCELLING, from ONGOING, buyers are being refunded, only continueCancel is allowed.<br>
      */
     public int status;
 
+    /**
+     * Not stored. If the hot counters are read from an old record instead of their own keys.
+     * The record no longer carries them once it's rewritten, so they must be written along with it.
+     */
+    public boolean countersInRecord;
+
     public ProjectDynamicContent(int remainTokenCount) {
         this.remainTokenCount = remainTokenCount;
         this.totalPurchasedAmount = 0;
@@ -74,6 +82,96 @@ public class ProjectDynamicContent {
         this.finishedMilestoneCount = 0;
         this.nextMilestoneIndex = 0;
         this.status = 0;
+        this.countersInRecord = false;
+    }
+
+    /**
+     * Encode this into the compact storage layout.
+     * The hot counters are not included, see {@link StorageCodec#VERSION_2}.
+     */
+    public ByteString toByteString() {
+        ByteWriter writer = new ByteWriter(StorageCodec.VERSION_2);
+        writer.writeBoolean(this.thresholdMilestonePassed);
+        writer.writeBoolean(this.lastMilestoneFinished);
+        writer.writeInt(this.lastUpdateTime, StorageCodec.TIME_LENGTH);
+        writer.writeInt(this.finishedMilestoneCount, StorageCodec.INT_LENGTH);
+        writer.writeInt(this.nextMilestoneIndex, StorageCodec.INT_LENGTH);
+        writer.writeInt(this.status, StorageCodec.INT_LENGTH);
+        writer.writeByteString(this.extension);
+        return writer.toByteString();
+    }
+
+    /**
+     * Decode the storage record, both the compact layout and the
+     * old {@link StdLib#serialize(Object)} one are accepted.
+     * Hot counters are left as 0 if the record doesn't carry them.
+     */
+    public static ProjectDynamicContent fromByteString(ByteString data) {
+        ProjectDynamicContent result;
+        if (StorageCodec.isLegacy(data)) {
+            // remainTokenCount, totalPurchasedAmount, buyerCounter, thresholdMilestonePassed,
+            // lastMilestoneFinished, lastUpdateTime, finishedMilestoneCount, nextMilestoneIndex,
+            // preserved0-9, status
+            Object[] fields = (Object[]) StdLib.deserialize(data);
+            result = new ProjectDynamicContent((int) fields[0]);
+            result.totalPurchasedAmount = (int) fields[1];
+            result.buyerCounter = (int) fields[2];
+            result.thresholdMilestonePassed = (boolean) fields[3];
+            result.lastMilestoneFinished = (boolean) fields[4];
+            result.lastUpdateTime = (int) fields[5];
+            result.finishedMilestoneCount = (int) fields[6];
+            result.nextMilestoneIndex = (int) fields[7];
+            result.status = (int) fields[18];
+            result.countersInRecord = true;
+            return result;
+        }
+        ByteReader reader = new ByteReader(data, 1);
+        result = new ProjectDynamicContent(0);
+        if (data.get(0) == StorageCodec.VERSION_1) {
+            result.remainTokenCount = reader.readInt(StorageCodec.AMOUNT_LENGTH);
+            result.totalPurchasedAmount = reader.readInt(StorageCodec.AMOUNT_LENGTH);
+            result.buyerCounter = reader.readInt(StorageCodec.INT_LENGTH);
+            result.countersInRecord = true;
+        }
+        result.thresholdMilestonePassed = reader.readBoolean();
+        result.lastMilestoneFinished = reader.readBoolean();
+        result.lastUpdateTime = reader.readInt(StorageCodec.TIME_LENGTH);
+        result.finishedMilestoneCount = reader.readInt(StorageCodec.INT_LENGTH);
+        result.nextMilestoneIndex = reader.readInt(StorageCodec.INT_LENGTH);
+        result.status = reader.readInt(StorageCodec.INT_LENGTH);
+        result.extension = reader.readByteString();
+        return result;
+    }
+
+    /**
+     * Calculate the refund amount when the project is finished with unfinished milestones.
+     * Buyer gets back the purchase and the stake for each unfinished milestone.
+     *
+     * @param staticContent of a given project
+     * @return the amount of refund
+     */
+    public int finishRefund(ProjectStaticContent staticContent, int buyerPurchaseAmount) {
+        int totalMilestones = staticContent.milestoneCount;
+        int unfinishedMilestones = totalMilestones - this.finishedMilestoneCount;
+        int totalAmount = buyerPurchaseAmount + buyerPurchaseAmount * staticContent.stakeRate100 / 100;
+        return totalAmount * unfinishedMilestones / totalMilestones;
+    }
+
+    /**
+     * Calculate the upper bound of {@link #finishRefund(ProjectStaticContent, int)}
+     * summed over all buyers, without knowing each purchase.
+     * Each refund is floored, so the sum will never exceed the refund of total purchased amount.
+     *
+     * @param staticContent of a given project
+     * @return the amount should be reserved for buyers
+     */
+    public int finishRefundReserve(ProjectStaticContent staticContent) {
+        int totalMilestones = staticContent.milestoneCount;
+        int unfinishedMilestones = totalMilestones - this.finishedMilestoneCount;
+        int numerator = this.totalPurchasedAmount * (100 + staticContent.stakeRate100) * unfinishedMilestones;
+        int denominator = 100 * totalMilestones;
+        // round up
+        return (numerator + denominator - 1) / denominator;
     }
 
     /**
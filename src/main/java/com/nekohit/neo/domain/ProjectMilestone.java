@@ -1,6 +1,10 @@
 package com.nekohit.neo.domain;
 
+import com.nekohit.neo.helper.ByteReader;
+import com.nekohit.neo.helper.ByteWriter;
+import io.neow3j.devpack.ByteString;
 import io.neow3j.devpack.Runtime;
+import io.neow3j.devpack.contracts.StdLib;
 
 public class ProjectMilestone {
     /**
@@ -29,17 +33,11 @@ public class ProjectMilestone {
      * */
     public int weight = -1;
 
-    // Preserved for future use
-    public Object preserved0 = null;
-    public Object preserved1 = null;
-    public Object preserved2 = null;
-    public Object preserved3 = null;
-    public Object preserved4 = null;
-    public Object preserved5 = null;
-    public Object preserved6 = null;
-    public Object preserved7 = null;
-    public Object preserved8 = null;
-    public Object preserved9 = null;
+    /**
+     * Extension slot, preserved for future use.
+     * Kept as is when the record is read and written back.
+     */
+    public ByteString extension = null;
 
     public ProjectMilestone(String title, String description, int endTimestamp) {
         this.title = title;
@@ -48,6 +46,86 @@ public class ProjectMilestone {
         proofOfWork = null;
     }
 
+    /**
+     * Encode this into the compact storage layout.
+     * Null proof of work is written as empty, since empty proof is not allowed.
+     */
+    public ByteString toByteString() {
+        ByteWriter writer = new ByteWriter(StorageCodec.VERSION_1);
+        writer.writeInt(this.endTimestamp, StorageCodec.TIME_LENGTH);
+        writer.writeInt(this.weight, StorageCodec.INT_LENGTH);
+        writer.writeString(this.title);
+        writer.writeString(this.description);
+        writer.writeString(this.proofOfWork);
+        writer.writeByteString(this.extension);
+        return writer.toByteString();
+    }
+
+    /**
+     * Decode the storage record, both the compact layout and the
+     * old {@link StdLib#serialize(Object)} one are accepted.
+     */
+    public static ProjectMilestone fromByteString(ByteString data) {
+        ProjectMilestone result;
+        if (StorageCodec.isLegacy(data)) {
+            // title, description, endTimestamp, proofOfWork, weight, preserved0-9
+            Object[] fields = (Object[]) StdLib.deserialize(data);
+            result = new ProjectMilestone((String) fields[0], (String) fields[1], (int) fields[2]);
+            result.proofOfWork = (String) fields[3];
+            result.weight = (int) fields[4];
+            return result;
+        }
+        ByteReader reader = new ByteReader(data, 1);
+        int endTimestamp = reader.readInt(StorageCodec.TIME_LENGTH);
+        int weight = reader.readInt(StorageCodec.INT_LENGTH);
+        String title = reader.readString();
+        String description = reader.readString();
+        result = new ProjectMilestone(title, description, endTimestamp);
+        result.weight = weight;
+        String proofOfWork = reader.readString();
+        if (proofOfWork.length() != 0) {
+            result.proofOfWork = proofOfWork;
+        }
+        result.extension = reader.readByteString();
+        return result;
+    }
+
+    /**
+     * Encode the schedule of a project into one record. The proof of work is
+     * not included, since it's the only part changed after declaring the project.
+     */
+    public static ByteString scheduleToByteString(ProjectMilestone[] milestones) {
+        ByteWriter writer = new ByteWriter(StorageCodec.VERSION_1);
+        writer.writeInt(milestones.length, StorageCodec.INT_LENGTH);
+        for (int i = 0; i < milestones.length; i++) {
+            ProjectMilestone milestone = milestones[i];
+            writer.writeInt(milestone.endTimestamp, StorageCodec.TIME_LENGTH);
+            writer.writeInt(milestone.weight, StorageCodec.INT_LENGTH);
+            writer.writeString(milestone.title);
+            writer.writeString(milestone.description);
+            writer.writeByteString(milestone.extension);
+        }
+        return writer.toByteString();
+    }
+
+    /**
+     * Decode the schedule record, all milestones come without proof of work.
+     */
+    public static ProjectMilestone[] scheduleFromByteString(ByteString data) {
+        ByteReader reader = new ByteReader(data, 1);
+        ProjectMilestone[] result = new ProjectMilestone[reader.readInt(StorageCodec.INT_LENGTH)];
+        for (int i = 0; i < result.length; i++) {
+            int endTimestamp = reader.readInt(StorageCodec.TIME_LENGTH);
+            int weight = reader.readInt(StorageCodec.INT_LENGTH);
+            String title = reader.readString();
+            String description = reader.readString();
+            result[i] = new ProjectMilestone(title, description, endTimestamp);
+            result[i].weight = weight;
+            result[i].extension = reader.readByteString();
+        }
+        return result;
+    }
+
     /**
      * {@link ProjectMilestone#proofOfWork} is considered a proof of milestone.
      * If that is not null, then this milestone is finished.
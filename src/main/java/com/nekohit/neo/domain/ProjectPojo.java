@@ -114,25 +114,7 @@ public class ProjectPojo {
         this.remainTokenCount = dynamicContent.remainTokenCount;
         this.buyerCount = dynamicContent.buyerCounter;
 
-        // update status first
-        if (dynamicContent.status == 0) {
-            this.status = "PENDING";
-            this.stage = null;
-        } else if (dynamicContent.status == 1) {
-            this.status = "ONGOING";
-            if (WCAAuxiliary.checkIfReadyToFinish(staticContent, dynamicContent)) {
-                this.stage = "Ready-To-Finish";
-            } else if (WCAAuxiliary.checkIfThresholdMet(staticContent, dynamicContent)) {
-                this.stage = "Active";
-            } else {
-                this.stage = "Open";
-            }
-        } else if (dynamicContent.status == 2) {
-            this.status = "FINISHED";
-            this.stage = null;
-        } else {
-            this.status = "UNKNOWN";
-            this.stage = null;
-        }
+        this.status = WCAAuxiliary.getStatusName(dynamicContent);
+        this.stage = WCAAuxiliary.getStageName(staticContent, dynamicContent);
     }
 }
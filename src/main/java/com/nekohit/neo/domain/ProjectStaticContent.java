@@ -1,7 +1,11 @@
 package com.nekohit.neo.domain;
 
+import com.nekohit.neo.helper.ByteReader;
+import com.nekohit.neo.helper.ByteWriter;
+import io.neow3j.devpack.ByteString;
 import io.neow3j.devpack.Hash160;
 import io.neow3j.devpack.Runtime;
+import io.neow3j.devpack.contracts.StdLib;
 
 public class ProjectStaticContent {
     /**
@@ -74,24 +78,25 @@ public class ProjectStaticContent {
      * */
     public final Hash160 tokenHash;
 
-    // Preserved for future use
-    public Object preserved0 = null;
-    public Object preserved1 = null;
-    public Object preserved2 = null;
-    public Object preserved3 = null;
-    public Object preserved4 = null;
-    public Object preserved5 = null;
-    public Object preserved6 = null;
-    public Object preserved7 = null;
-    public Object preserved8 = null;
-    public Object preserved9 = null;
+    /**
+     * The identifier of this project.
+     * Null if the record is written before {@link StorageCodec#VERSION_3}.
+     */
+    public String identifier = null;
+
+    /**
+     * Extension slot, preserved for future use.
+     * Kept as is when the record is read and written back.
+     */
+    public ByteString extension = null;
 
     public ProjectStaticContent(
             Hash160 owner, String description, Hash160 tokenHash,
             int stakeRate100, int maxTokenSoldCount,
             int milestoneCount, int thresholdIndex,
             int coolDownInterval, int thresholdMilestoneExpireTime,
-            int lastMilestoneExpireTime, boolean bePublic
+            int lastMilestoneExpireTime, boolean bePublic,
+            int creationTimestamp
     ) {
         this.owner = owner;
         this.description = description;
@@ -104,8 +109,78 @@ public class ProjectStaticContent {
         this.thresholdMilestoneExpireTime = thresholdMilestoneExpireTime;
         this.lastMilestoneExpireTime = lastMilestoneExpireTime;
         this.bePublic = bePublic;
+        this.creationTimestamp = creationTimestamp;
+    }
 
-        this.creationTimestamp = Runtime.getTime();
+    /**
+     * Encode this into the compact storage layout.
+     */
+    public ByteString toByteString() {
+        ByteWriter writer = new ByteWriter(StorageCodec.VERSION_3);
+        writer.writeHash160(this.owner);
+        writer.writeHash160(this.tokenHash);
+        writer.writeInt(this.stakeRate100, StorageCodec.INT_LENGTH);
+        writer.writeInt(this.maxTokenSoldCount, StorageCodec.AMOUNT_LENGTH);
+        writer.writeInt(this.milestoneCount, StorageCodec.INT_LENGTH);
+        writer.writeInt(this.thresholdIndex, StorageCodec.INT_LENGTH);
+        writer.writeInt(this.coolDownInterval, StorageCodec.TIME_LENGTH);
+        writer.writeInt(this.creationTimestamp, StorageCodec.TIME_LENGTH);
+        writer.writeInt(this.thresholdMilestoneExpireTime, StorageCodec.TIME_LENGTH);
+        writer.writeInt(this.lastMilestoneExpireTime, StorageCodec.TIME_LENGTH);
+        writer.writeBoolean(this.bePublic);
+        writer.writeString(this.description);
+        writer.writeString(this.identifier);
+        writer.writeByteString(this.extension);
+        return writer.toByteString();
+    }
+
+    /**
+     * Decode the storage record, both the compact layout and the
+     * old {@link StdLib#serialize(Object)} one are accepted.
+     */
+    public static ProjectStaticContent fromByteString(ByteString data) {
+        if (StorageCodec.isLegacy(data)) {
+            // owner, description, stakeRate100, maxTokenSoldCount, milestoneCount,
+            // thresholdIndex, coolDownInterval, creationTimestamp, thresholdMilestoneExpireTime,
+            // lastMilestoneExpireTime, bePublic, tokenHash, preserved0-9
+            Object[] fields = (Object[]) StdLib.deserialize(data);
+            return new ProjectStaticContent(
+                    (Hash160) fields[0], (String) fields[1], (Hash160) fields[11],
+                    (int) fields[2], (int) fields[3], (int) fields[4], (int) fields[5],
+                    (int) fields[6], (int) fields[8], (int) fields[9], (boolean) fields[10],
+                    (int) fields[7]
+            );
+        }
+        ByteReader reader = new ByteReader(data, 1);
+        Hash160 owner = reader.readHash160();
+        Hash160 tokenHash = reader.readHash160();
+        int stakeRate100 = reader.readInt(StorageCodec.INT_LENGTH);
+        int maxTokenSoldCount = reader.readInt(StorageCodec.AMOUNT_LENGTH);
+        int milestoneCount = reader.readInt(StorageCodec.INT_LENGTH);
+        int thresholdIndex = reader.readInt(StorageCodec.INT_LENGTH);
+        int coolDownInterval = reader.readInt(StorageCodec.TIME_LENGTH);
+        int creationTimestamp = reader.readInt(StorageCodec.TIME_LENGTH);
+        int thresholdMilestoneExpireTime = reader.readInt(StorageCodec.TIME_LENGTH);
+        int lastMilestoneExpireTime = reader.readInt(StorageCodec.TIME_LENGTH);
+        boolean bePublic = reader.readBoolean();
+        String description = reader.readString();
+        String identifier = null;
+        if (data.get(0) >= StorageCodec.VERSION_3) {
+            identifier = reader.readString();
+            if (identifier.length() == 0) {
+                // the record is upgraded without knowing the identifier
+                identifier = null;
+            }
+        }
+        ProjectStaticContent result = new ProjectStaticContent(
+                owner, description, tokenHash, stakeRate100, maxTokenSoldCount,
+                milestoneCount, thresholdIndex, coolDownInterval,
+                thresholdMilestoneExpireTime, lastMilestoneExpireTime, bePublic,
+                creationTimestamp
+        );
+        result.identifier = identifier;
+        result.extension = reader.readByteString();
+        return result;
     }
 
 
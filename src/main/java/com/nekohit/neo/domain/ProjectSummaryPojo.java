@@ -0,0 +1,87 @@
+package com.nekohit.neo.domain;
+
+import com.nekohit.neo.contract.WCAAuxiliary;
+import io.neow3j.devpack.Hash160;
+
+/**
+ * A light version of {@link ProjectPojo} for list views.
+ * Only the static and dynamic records are read, no milestones and no description.
+ * Hashes are kept as is, since this is not meant to be serialized into json.
+ */
+public class ProjectSummaryPojo {
+    /**
+     * The identifier of this project.
+     */
+    public final String identifier;
+
+    /**
+     * The owner of this project.
+     */
+    public final Hash160 owner;
+
+    /**
+     * The token used by this project.
+     */
+    public final Hash160 tokenHash;
+
+    /**
+     * Stake rate represented in fraction (2 decimals).
+     */
+    public final int stakeRate100;
+
+    /**
+     * Total sold tokens represented in fraction.
+     */
+    public final int maxTokenSoldCount;
+
+    /**
+     * Total milestone count.
+     */
+    public final int milestonesCount;
+
+    /**
+     * The timestamp indicate when the project is updated.
+     */
+    public final int lastUpdateTimestamp;
+
+    /**
+     * Index of the next to-be-done milestone.
+     */
+    public final int nextMilestone;
+
+    /**
+     * How many tokens remained for sale.
+     */
+    public final int remainTokenCount;
+
+    /**
+     * How many addresses have already made the purchase.
+     * Refunded addresses are excluded.
+     */
+    public final int buyerCount;
+
+    /**
+     * String representation of status.
+     */
+    public final String status;
+
+    /**
+     * String representation of stage, null if the status != ONGOING.
+     */
+    public final String stage;
+
+    public ProjectSummaryPojo(String identifier, ProjectStaticContent staticContent, ProjectDynamicContent dynamicContent) {
+        this.identifier = identifier;
+        this.owner = staticContent.owner;
+        this.tokenHash = staticContent.tokenHash;
+        this.stakeRate100 = staticContent.stakeRate100;
+        this.maxTokenSoldCount = staticContent.maxTokenSoldCount;
+        this.milestonesCount = staticContent.milestoneCount;
+        this.lastUpdateTimestamp = dynamicContent.lastUpdateTime;
+        this.nextMilestone = dynamicContent.nextMilestoneIndex;
+        this.remainTokenCount = dynamicContent.remainTokenCount;
+        this.buyerCount = dynamicContent.buyerCounter;
+        this.status = WCAAuxiliary.getStatusName(dynamicContent);
+        this.stage = WCAAuxiliary.getStageName(staticContent, dynamicContent);
+    }
+}
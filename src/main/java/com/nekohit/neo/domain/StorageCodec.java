@@ -0,0 +1,54 @@
+package com.nekohit.neo.domain;
+
+import io.neow3j.devpack.ByteString;
+
+/**
+ * Shared constants of the compact storage layout used by
+ * {@link ProjectStaticContent}, {@link ProjectDynamicContent} and {@link ProjectMilestone}.
+ * <p>
+ * Every record starts with a version byte, followed by fixed-width fields,
+ * then length-prefixed strings, and an extension slot at the end.
+ */
+public class StorageCodec {
+    public static final int VERSION_1 = 1;
+
+    /**
+     * Same as {@link #VERSION_1}, but {@link ProjectDynamicContent} no longer
+     * carries the hot counters, which are stored in their own keys.
+     */
+    public static final int VERSION_2 = 2;
+
+    /**
+     * {@link ProjectStaticContent} carries the identifier after the description,
+     * since the identifier key is hashed and can't be read back from it.
+     */
+    public static final int VERSION_3 = 3;
+
+    /**
+     * Records written by {@link io.neow3j.devpack.contracts.StdLib#serialize(Object)}
+     * start with the stack item type of Struct, which is 0x41.
+     */
+    public static final int LEGACY_STRUCT_TYPE = 0x41;
+
+    /**
+     * Counters, indexes and rates.
+     */
+    public static final int INT_LENGTH = 4;
+
+    /**
+     * Timestamps and intervals, in milliseconds.
+     */
+    public static final int TIME_LENGTH = 8;
+
+    /**
+     * Token amounts, since the project can use any NEP-17 token.
+     */
+    public static final int AMOUNT_LENGTH = 16;
+
+    /**
+     * @return true if the record is written by StdLib.serialize, aka before the compact layout.
+     */
+    public static boolean isLegacy(ByteString data) {
+        return data.get(0) == LEGACY_STRUCT_TYPE;
+    }
+}
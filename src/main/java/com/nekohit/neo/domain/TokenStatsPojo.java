@@ -0,0 +1,61 @@
+package com.nekohit.neo.domain;
+
+/**
+ * Statistics of the projects using the same token.
+ * All amounts are represented in fraction.
+ */
+public class TokenStatsPojo {
+    /**
+     * Total stake paid by creators.
+     */
+    public final int stakedAmount;
+
+    /**
+     * Total tokens paid by buyers.
+     */
+    public final int purchasedAmount;
+
+    /**
+     * Total tokens returned to buyers, by refund, cancel and claim.
+     */
+    public final int refundedAmount;
+
+    /**
+     * Total tokens paid to creators, including the returned stake.
+     */
+    public final int settledAmount;
+
+    /**
+     * Count of PENDING projects.
+     */
+    public final int pendingCount;
+
+    /**
+     * Count of ONGOING projects.
+     */
+    public final int ongoingCount;
+
+    /**
+     * Count of FINISHED projects.
+     */
+    public final int finishedCount;
+
+    /**
+     * Count of CANCELLING projects.
+     */
+    public final int cancellingCount;
+
+    public TokenStatsPojo(
+            int stakedAmount, int purchasedAmount, int refundedAmount, int settledAmount,
+            int pendingCount, int ongoingCount, int finishedCount, int cancellingCount
+    ) {
+        this.stakedAmount = stakedAmount;
+        this.purchasedAmount = purchasedAmount;
+        this.refundedAmount = refundedAmount;
+        this.settledAmount = settledAmount;
+        this.pendingCount = pendingCount;
+        this.ongoingCount = ongoingCount;
+        this.finishedCount = finishedCount;
+        this.cancellingCount = cancellingCount;
+    }
+}
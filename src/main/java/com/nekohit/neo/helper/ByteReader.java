@@ -0,0 +1,55 @@
+package com.nekohit.neo.helper;
+
+import io.neow3j.devpack.ByteString;
+import io.neow3j.devpack.Hash160;
+
+/**
+ * Read fields written by {@link ByteWriter}, in the same order.
+ */
+public class ByteReader {
+    private final ByteString data;
+    private int offset;
+
+    /**
+     * @param data   the whole record.
+     * @param offset where the first field starts, normally 1 to skip the version.
+     */
+    public ByteReader(ByteString data, int offset) {
+        this.data = data;
+        this.offset = offset;
+    }
+
+    public int readInt(int length) {
+        ByteString value = this.data.range(this.offset, length);
+        this.offset += length;
+        return value.toInt();
+    }
+
+    public boolean readBoolean() {
+        return readInt(1) != 0;
+    }
+
+    public Hash160 readHash160() {
+        ByteString value = this.data.range(this.offset, 20);
+        this.offset += 20;
+        return new Hash160(value);
+    }
+
+    public ByteString readByteString() {
+        int length = readInt(4);
+        ByteString value = this.data.range(this.offset, length);
+        this.offset += length;
+        return value;
+    }
+
+    public String readString() {
+        return readByteString().toString();
+    }
+
+    /**
+     * @return true if there are fields left, aka written by a newer version.
+     */
+    public boolean hasMore() {
+        return this.offset < this.data.length();
+    }
+}
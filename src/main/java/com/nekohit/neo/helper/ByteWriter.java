@@ -0,0 +1,59 @@
+package com.nekohit.neo.helper;
+
+import io.neow3j.devpack.ByteString;
+import io.neow3j.devpack.Hash160;
+
+/**
+ * Write fields into a compact, versioned byte layout.
+ * The first byte is the version, then fields are appended in order.
+ * See {@link ByteReader} for reading them back.
+ */
+public class ByteWriter {
+    private ByteString buffer;
+
+    public ByteWriter(int version) {
+        this.buffer = Utils.intToPaddingByteString(version, 1);
+    }
+
+    /**
+     * Write a little endian, two's complement int with fixed length.
+     */
+    public void writeInt(int value, int length) {
+        this.buffer = this.buffer.concat(Utils.intToFixedByteString(value, length));
+    }
+
+    public void writeBoolean(boolean value) {
+        writeInt(value ? 1 : 0, 1);
+    }
+
+    public void writeHash160(Hash160 value) {
+        this.buffer = this.buffer.concat(value.toByteString());
+    }
+
+    /**
+     * Write the length (4 bytes), then the content. Null is written as empty.
+     */
+    public void writeByteString(ByteString value) {
+        if (value == null) {
+            writeInt(0, 4);
+        } else {
+            writeInt(value.length(), 4);
+            this.buffer = this.buffer.concat(value);
+        }
+    }
+
+    /**
+     * Same as {@link #writeByteString(ByteString)}. Null is written as empty.
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeByteString(null);
+        } else {
+            writeByteString(new ByteString(value));
+        }
+    }
+
+    public ByteString toByteString() {
+        return this.buffer;
+    }
+}
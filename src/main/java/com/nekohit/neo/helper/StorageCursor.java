@@ -0,0 +1,104 @@
+package com.nekohit.neo.helper;
+
+import io.neow3j.devpack.ByteString;
+import io.neow3j.devpack.Iterator;
+import io.neow3j.devpack.List;
+import io.neow3j.devpack.Runtime;
+import io.neow3j.devpack.Storage;
+import io.neow3j.devpack.StorageContext;
+import io.neow3j.devpack.constants.FindOptions;
+
+public class StorageCursor {
+    // Storage keys are at most 64 bytes, so a longer cursor can't be mistaken for a key
+    private static final int MAX_KEY_LENGTH = 64;
+    // Each Storage.find costs about 0.01 GAS, a page stops after this many of them
+    private static final int MAX_FINDS = 16;
+
+    /**
+     * Find at most size entries under the prefix, which come after the cursor.
+     * <p>
+     * Without a cursor, this is a single Storage.find over the prefix.
+     * Storage.find can only seek to a prefix, so to resume from a cursor we seek
+     * to the bucket (prefix plus the first byte) of the cursor, skip the entries
+     * no greater than the cursor in that bucket, then carry on with the following
+     * buckets, one Storage.find each. After {@link #MAX_FINDS} of them the page
+     * stops, and the cursor returned resumes at the next bucket.
+     * <p>
+     * The skipping is not bounded. If the keys are hashes, a bucket holds about
+     * N/256 of the N entries, so a page skips about N/512 of them on average,
+     * and dumping all entries by pages of size skips about N^2 / (512 * size)
+     * in total. Use a large page size for big maps.
+     * <p>
+     * A page may have less than size entries while there are more left, if it
+     * stops for the finds or the GAS reserve. Keep going until the cursor is null.
+     *
+     * @param cursor     returned by the previous page. Null or empty for the beginning.
+     * @param gasReserve in the unit of 10^-8 GAS, 0 to disable the check.
+     * @return Pair(list of Pair(key without prefix, value), next cursor). The cursor is null if there is nothing left.
+     */
+    public static Pair<List<Pair<ByteString, ByteString>>, ByteString> findAfter(
+            StorageContext ctx, ByteString prefix, ByteString cursor, int size, int gasReserve
+    ) {
+        List<Pair<ByteString, ByteString>> result = new List<>();
+        if (cursor == null || cursor.length() == 0) {
+            // an empty cursor starts from the beginning again
+            ByteString last = new ByteString(new byte[0]);
+            Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(ctx, prefix, FindOptions.RemovePrefix);
+            while (result.size() < size) {
+                if (Runtime.getGasLeft() < gasReserve) {
+                    return new Pair<>(result, last);
+                }
+                if (!iter.next()) {
+                    return new Pair<>(result, null);
+                }
+                Iterator.Struct<ByteString, ByteString> elem = iter.get();
+                result.add(new Pair<>(elem.key, elem.value));
+                last = elem.key;
+            }
+            return new Pair<>(result, last);
+        }
+        int bucket = cursor.get(0);
+        boolean skip = true;
+        if (cursor.length() > MAX_KEY_LENGTH) {
+            // made by bucketDone, the bucket of the cursor is listed already
+            bucket++;
+            skip = false;
+        }
+        ByteString last = cursor;
+        int finds = 0;
+        for (; bucket < 256; bucket++) {
+            if (finds == MAX_FINDS) {
+                return new Pair<>(result, last);
+            }
+            finds++;
+            ByteString bucketPrefix = prefix.concat(Utils.byteToByteString(bucket));
+            Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(ctx, bucketPrefix, FindOptions.None);
+            while (true) {
+                if (result.size() == size || Runtime.getGasLeft() < gasReserve) {
+                    return new Pair<>(result, last);
+                }
+                if (!iter.next()) {
+                    break;
+                }
+                Iterator.Struct<ByteString, ByteString> elem = iter.get();
+                ByteString key = elem.key.last(elem.key.length() - prefix.length());
+                if (skip && Utils.lessOrEqual(key, cursor)) {
+                    continue;
+                }
+                result.add(new Pair<>(key, elem.value));
+                last = key;
+            }
+            skip = false;
+            last = bucketDone(bucket);
+        }
+        return new Pair<>(result, null);
+    }
+
+    /**
+     * The cursor of a fully listed bucket. It's longer than any key,
+     * so the next page starts from the bucket after it.
+     */
+    private static ByteString bucketDone(int bucket) {
+        return Utils.byteToByteString(bucket).concat(new byte[MAX_KEY_LENGTH]);
+    }
+}
@@ -22,4 +22,75 @@ public class Utils {
         }
         return b;
     }
+
+    /**
+     * Little endian, two's complement representation of an int with fixed length.
+     * Unlike {@link #intToPaddingByteString(int, int)}, negative numbers are
+     * padded with 0xFF, thus {@link ByteString#toInt()} gives the same number.
+     */
+    public static ByteString intToFixedByteString(int i, int l) {
+        if (i >= 0) {
+            // CONVERT always keeps the sign bit for positive numbers
+            return intToPaddingByteString(i, l);
+        }
+        // Integers in NeoVM are not limited to 32 bits, so i + 2^(8*l) is positive
+        // and shares the lower l bytes with i. The extra byte is the zero sign byte.
+        ByteString b = intToByteString(i + (1 << (l * 8)));
+        assert b.length() == l + 1 : "Max length exceeded.";
+        return b.take(l);
+    }
+
+    /**
+     * Big endian representation of a non-negative int with fixed length.
+     * Storage keys are compared byte by byte, so keys made by this
+     * are listed in the numeric order.
+     */
+    public static ByteString intToBigEndianByteString(int i, int l) {
+        assert i >= 0 : "Only non-negative numbers are allowed.";
+        ByteString littleEndian = intToPaddingByteString(i, l);
+        ByteString result = new ByteString(new byte[0]);
+        for (int k = l - 1; k >= 0; k--) {
+            result = result.concat(byteToByteString(littleEndian.get(k)));
+        }
+        return result;
+    }
+
+    /**
+     * Read a non-negative int from its big endian representation,
+     * the reverse of {@link #intToBigEndianByteString(int, int)}.
+     */
+    public static int bigEndianByteStringToInt(ByteString b) {
+        int result = 0;
+        for (int i = 0; i < b.length(); i++) {
+            result = result * 256 + b.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Make a single byte ByteString from an int in [0, 255].
+     */
+    public static ByteString byteToByteString(int b) {
+        // CONVERT gives empty ByteString for 0 and [b][00] for values above 127
+        return intToPaddingByteString(b, 2).take(1);
+    }
+
+    /**
+     * Compare two ByteStrings in the same order as the storage keys,
+     * aka byte by byte, shorter one first if one is a prefix of another.
+     * Note: NeoVM picks bytes from ByteString as unsigned integer.
+     *
+     * @return true if a is less than or equal to b.
+     */
+    public static boolean lessOrEqual(ByteString a, ByteString b) {
+        int length = a.length() < b.length() ? a.length() : b.length();
+        for (int i = 0; i < length; i++) {
+            int x = a.get(i);
+            int y = b.get(i);
+            if (x != y) {
+                return x < y;
+            }
+        }
+        return a.length() <= b.length();
+    }
 }
@@ -16,6 +16,7 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -78,6 +79,48 @@ public class CatTokenTest extends ContractTestFramework {
         }
     }
 
+    @Test
+    void testDumpHolderByCursor() throws Throwable {
+        ContractParameter cursor = ContractParameter.any(null);
+        int count = 0;
+        while (true) {
+            List<StackItem> result = testInvoke(
+                    getCatToken(),
+                    "dumpHolderByCursor",
+                    new ContractParameter[]{cursor, ContractParameter.integer(2)},
+                    new Signer[]{}
+            ).getStack().get(0).getList();
+            for (StackItem elem : result.get(0).getList()) {
+                List<StackItem> pair = elem.getList();
+                Hash160 account = Hash160.fromAddress(pair.get(0).getAddress());
+                assertEquals(getCatToken().getBalanceOf(account), pair.get(1).getInteger());
+                count++;
+            }
+            if (result.get(1).getValue() == null) {
+                break;
+            }
+            cursor = ContractParameter.byteArray(result.get(1).getByteArray());
+        }
+
+        int pagedCount = 0;
+        for (int page = 1; true; page++) {
+            int size = testInvoke(
+                    getCatToken(),
+                    "dumpHolder",
+                    new ContractParameter[]{
+                            ContractParameter.integer(page),
+                            ContractParameter.integer(20)
+                    },
+                    new Signer[]{}
+            ).getStack().get(0).getList().size();
+            if (size == 0) {
+                break;
+            }
+            pagedCount += size;
+        }
+        assertEquals(pagedCount, count);
+    }
+
     @Test
     void testNotOwner() {
         assertThrows(TransactionConfigurationException.class, () -> invokeFunction(
@@ -90,6 +133,49 @@ public class CatTokenTest extends ContractTestFramework {
         ));
     }
 
+    @Test
+    void testInitHolderStatsOnce() throws Throwable {
+        var oldCount = getHolderCount();
+        invokeFunction(
+                getCatToken(), "initHolderStats",
+                new ContractParameter[]{
+                        ContractParameter.integer(5),
+                        ContractParameter.array()
+                },
+                new Signer[]{
+                        AccountSigner.calledByEntry(CONTRACT_OWNER_ACCOUNT)
+                }
+        );
+        // added to the holders counted since the upgrade
+        assertEquals(5, getHolderCount() - oldCount);
+
+        var throwable = assertThrows(
+                TransactionConfigurationException.class,
+                () -> invokeFunction(
+                        getCatToken(), "initHolderStats",
+                        new ContractParameter[]{
+                                ContractParameter.integer(5),
+                                ContractParameter.array()
+                        },
+                        new Signer[]{
+                                AccountSigner.calledByEntry(CONTRACT_OWNER_ACCOUNT)
+                        }
+                )
+        );
+        assertTrue(
+                throwable.getMessage().contains("Holder stats are already initialized."),
+                "Unexpected message: " + throwable.getMessage()
+        );
+    }
+
+    private long getHolderCount() throws Throwable {
+        return testInvoke(
+                getCatToken(), "holderStats",
+                new ContractParameter[0],
+                new Signer[0]
+        ).getStack().get(0).getList().get(0).getInteger().longValue();
+    }
+
     @Test
     void testInvalidAmount() {
         var throwable = assertThrows(
@@ -159,6 +245,221 @@ public class CatTokenTest extends ContractTestFramework {
         assertEquals(transferAmount, newToBalance - oldToBalance);
     }
 
+    @Test
+    void testTransferMany() throws Throwable {
+        var toAccount1 = Account.create();
+        var toAccount2 = Account.create();
+        var oldFromBalance = getCatToken().getBalanceOf(this.testAccount).longValue();
+
+        invokeFunction(
+                getCatToken(), "transferMany",
+                new ContractParameter[]{
+                        ContractParameter.hash160(this.testAccount),
+                        ContractParameter.array(
+                                ContractParameter.hash160(toAccount1),
+                                ContractParameter.hash160(toAccount2)
+                        ),
+                        ContractParameter.array(
+                                ContractParameter.integer(100_00),
+                                ContractParameter.integer(200_00)
+                        ),
+                        ContractParameter.any(null)
+                },
+                new Signer[]{AccountSigner.calledByEntry(this.testAccount)}
+        );
+
+        var newFromBalance = getCatToken().getBalanceOf(this.testAccount).longValue();
+        assertEquals(300_00, oldFromBalance - newFromBalance);
+        assertEquals(100_00, getCatToken().getBalanceOf(toAccount1).longValue());
+        assertEquals(200_00, getCatToken().getBalanceOf(toAccount2).longValue());
+    }
+
+    @Test
+    void testBalanceOfAt() throws Throwable {
+        var toAccount = Account.create();
+        var oldBalance = getCatToken().getBalanceOf(this.testAccount).longValue();
+        var oldTotalSupply = getCatToken().getTotalSupply().longValue();
+        var blockBefore = neow3j.getBlockCount().send().getBlockCount().intValue() - 1;
+
+        transferToken(
+                getCatToken(), this.testAccount,
+                toAccount.getScriptHash(),
+                100_00, null, true
+        );
+        var blockAfter = neow3j.getBlockCount().send().getBlockCount().intValue() - 1;
+
+        assertEquals(oldBalance, balanceOfAt(this.testAccount, blockBefore));
+        assertEquals(oldBalance - 100_00, balanceOfAt(this.testAccount, blockAfter));
+        assertEquals(0, balanceOfAt(toAccount, blockBefore));
+        assertEquals(100_00, balanceOfAt(toAccount, blockAfter));
+        // transfers don't change the total supply
+        assertEquals(oldTotalSupply, testInvoke(
+                getCatToken(), "totalSupplyAt",
+                new ContractParameter[]{ContractParameter.integer(blockAfter)},
+                new Signer[0]
+        ).getStack().get(0).getInteger().longValue());
+    }
+
+    @Test
+    void testBatchMint() throws Throwable {
+        var toAccount1 = Account.create();
+        var toAccount2 = Account.create();
+        var oldTotalSupply = getCatToken().getTotalSupply().longValue();
+        // 3.00 CAT in total
+        transferTokenWithData(
+                gasToken, this.testAccount, getCatTokenAddress(),
+                300 * 5000,
+                ContractParameter.array(
+                        ContractParameter.array(ContractParameter.hash160(toAccount1), ContractParameter.integer(100)),
+                        ContractParameter.array(ContractParameter.hash160(toAccount2), ContractParameter.integer(200))
+                ),
+                true
+        );
+        assertEquals(100, getCatToken().getBalanceOf(toAccount1).longValue());
+        assertEquals(200, getCatToken().getBalanceOf(toAccount2).longValue());
+        assertEquals(oldTotalSupply + 300, getCatToken().getTotalSupply().longValue());
+    }
+
+    @Test
+    void testMintWithMapData() throws Throwable {
+        var oldBalance = getCatToken().getBalanceOf(this.testAccount).longValue();
+        var oldTotalSupply = getCatToken().getTotalSupply().longValue();
+        // not the pairs, so it goes to the sender
+        transferTokenWithData(
+                gasToken, this.testAccount, getCatTokenAddress(),
+                300 * 5000,
+                ContractParameter.map(Map.of(ContractParameter.string("key"), ContractParameter.integer(1))),
+                true
+        );
+        assertEquals(oldBalance + 300, getCatToken().getBalanceOf(this.testAccount).longValue());
+        assertEquals(oldTotalSupply + 300, getCatToken().getTotalSupply().longValue());
+    }
+
+    @Test
+    void testBatchMintIncorrectAmount() {
+        var toAccount = Account.create();
+        var throwable = assertThrows(
+                TransactionConfigurationException.class,
+                () -> transferTokenWithData(
+                        gasToken, this.testAccount, getCatTokenAddress(),
+                        300 * 5000,
+                        ContractParameter.array(
+                                ContractParameter.array(ContractParameter.hash160(toAccount), ContractParameter.integer(200))
+                        ),
+                        true
+                )
+        );
+        assertTrue(
+                throwable.getMessage().contains("Mint amounts don't match the payment."),
+                "Unexpected message: " + throwable.getMessage()
+        );
+    }
+
+    @Test
+    void testTransferFrom() throws Throwable {
+        var spender = getTestAccount();
+        var toAccount = Account.create();
+        var oldBalance = getCatToken().getBalanceOf(this.testAccount).longValue();
+        approve(this.testAccount, spender, 300_00);
+        assertEquals(300_00, allowance(this.testAccount, spender));
+
+        transferFrom(spender, this.testAccount, toAccount, 100_00);
+        assertEquals(oldBalance - 100_00, getCatToken().getBalanceOf(this.testAccount).longValue());
+        assertEquals(100_00, getCatToken().getBalanceOf(toAccount).longValue());
+        assertEquals(200_00, allowance(this.testAccount, spender));
+
+        var throwable = assertThrows(
+                TransactionConfigurationException.class,
+                () -> transferFrom(spender, this.testAccount, toAccount, 300_00)
+        );
+        assertTrue(
+                throwable.getMessage().contains("Insufficient allowance."),
+                "Unexpected message: " + throwable.getMessage()
+        );
+        // revoke
+        approve(this.testAccount, spender, 0);
+        assertEquals(0, allowance(this.testAccount, spender));
+    }
+
+    private void approve(Account owner, Account spender, long amount) throws Throwable {
+        invokeFunction(
+                getCatToken(), "approve",
+                new ContractParameter[]{
+                        ContractParameter.hash160(owner),
+                        ContractParameter.hash160(spender),
+                        ContractParameter.integer(BigInteger.valueOf(amount))
+                },
+                new Signer[]{AccountSigner.calledByEntry(owner)}
+        );
+    }
+
+    private long allowance(Account owner, Account spender) throws Throwable {
+        return testInvoke(
+                getCatToken(), "allowance",
+                new ContractParameter[]{
+                        ContractParameter.hash160(owner),
+                        ContractParameter.hash160(spender)
+                },
+                new Signer[0]
+        ).getStack().get(0).getInteger().longValue();
+    }
+
+    private void transferFrom(Account spender, Account from, Account to, long amount) throws Throwable {
+        invokeFunction(
+                getCatToken(), "transferFrom",
+                new ContractParameter[]{
+                        ContractParameter.hash160(spender),
+                        ContractParameter.hash160(from),
+                        ContractParameter.hash160(to),
+                        ContractParameter.integer(BigInteger.valueOf(amount)),
+                        ContractParameter.any(null)
+                },
+                new Signer[]{AccountSigner.calledByEntry(spender)}
+        );
+    }
+
+    @Test
+    void testHolderStats() throws Throwable {
+        var toAccount = Account.create();
+        var oldCount = holderStats().get(0).getInteger().longValue();
+
+        transferToken(
+                getCatToken(), this.testAccount,
+                toAccount.getScriptHash(),
+                100_00, null, true
+        );
+        var stats = holderStats();
+        assertEquals(oldCount + 1, stats.get(0).getInteger().longValue());
+
+        // biggest first, and the balances are up to date
+        var lastBalance = -1L;
+        for (StackItem elem : stats.get(1).getList()) {
+            List<StackItem> pair = elem.getList();
+            var balance = pair.get(1).getInteger().longValue();
+            var account = Hash160.fromAddress(pair.get(0).getAddress());
+            assertEquals(getCatToken().getBalanceOf(account).longValue(), balance);
+            assertTrue(lastBalance == -1 || lastBalance >= balance);
+            lastBalance = balance;
+        }
+    }
+
+    private List<StackItem> holderStats() throws Throwable {
+        return testInvoke(
+                getCatToken(), "holderStats", new ContractParameter[0], new Signer[0]
+        ).getStack().get(0).getList();
+    }
+
+    private long balanceOfAt(Account account, int blockIndex) throws Throwable {
+        return testInvoke(
+                getCatToken(), "balanceOfAt",
+                new ContractParameter[]{
+                        ContractParameter.hash160(account),
+                        ContractParameter.integer(blockIndex)
+                },
+                new Signer[0]
+        ).getStack().get(0).getInteger().longValue();
+    }
+
     @Test
     void testIncorrectCaller() {
         var throwable = assertThrows(
@@ -1,6 +1,7 @@
 package com.nekohit.neo.contract;
 
 import io.neow3j.contract.SmartContract;
+import io.neow3j.protocol.core.stackitem.StackItem;
 import io.neow3j.transaction.AccountSigner;
 import io.neow3j.transaction.Signer;
 import io.neow3j.types.ContractParameter;
@@ -8,7 +9,10 @@ import io.neow3j.types.Hash160;
 import io.neow3j.wallet.Account;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * This class offers some handy functions for invoking WCAContract.
@@ -28,6 +32,20 @@ public class ContractInvokeHelper {
         return result.getStack().get(0).getString();
     }
 
+    /**
+     * Query WCA details, return the fields of ProjectPojo
+     */
+    public static List<StackItem> queryProjectProto(SmartContract contract, String identifier) throws Throwable {
+        var result = ContractTestFramework.testInvoke(
+                contract, "queryProjectProto",
+                new ContractParameter[]{
+                        ContractParameter.string(identifier)
+                },
+                new Signer[0]
+        );
+        return result.getStack().get(0).getList();
+    }
+
     public static BigInteger queryPurchase(
             SmartContract contract, String identifier, Account buyer
     ) throws Throwable {
@@ -59,6 +77,91 @@ public class ContractInvokeHelper {
         return result.getStack().get(0).getString();
     }
 
+    /**
+     * Query WCA with filters, return the identifiers of listed projects
+     */
+    public static List<String> advanceQueryIdentifiers(
+            SmartContract contract, Hash160 token, Hash160 creator, Hash160 buyer, int page, int size
+    ) throws Throwable {
+        var result = ContractTestFramework.testInvoke(
+                contract, "advanceQueryProto",
+                new ContractParameter[]{
+                        ContractParameter.hash160(token),
+                        ContractParameter.hash160(creator),
+                        ContractParameter.hash160(buyer),
+                        ContractParameter.integer(page),
+                        ContractParameter.integer(size)
+                },
+                new Signer[0]
+        );
+        return result.getStack().get(0).getList().stream()
+                .map(it -> it.getList().get(0).getString())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * List all identifiers with given status, walking through every page
+     */
+    public static List<String> listByStatus(SmartContract contract, int status) throws Throwable {
+        return listAllByCursor(contract, "listByStatus", 10, ContractParameter.integer(status));
+    }
+
+    /**
+     * List all identifiers whose last milestone expires before timestamp, walking through every page
+     */
+    public static List<String> listExpiringBefore(SmartContract contract, long timestamp) throws Throwable {
+        return listExpiringBefore(contract, timestamp, 10);
+    }
+
+    /**
+     * Same as above, with the given page size
+     */
+    public static List<String> listExpiringBefore(SmartContract contract, long timestamp, int size) throws Throwable {
+        return listAllByCursor(contract, "listExpiringBefore", size, ContractParameter.integer(BigInteger.valueOf(timestamp)));
+    }
+
+    /**
+     * Call a cursor based listing method until the cursor is null, return all identifiers.
+     * The cursor and size are appended after the given parameters.
+     */
+    private static List<String> listAllByCursor(
+            SmartContract contract, String function, int size, ContractParameter... params
+    ) throws Throwable {
+        var identifiers = new ArrayList<String>();
+        ContractParameter cursor = ContractParameter.any(null);
+        while (true) {
+            var args = Arrays.copyOf(params, params.length + 2);
+            args[params.length] = cursor;
+            args[params.length + 1] = ContractParameter.integer(size);
+            List<StackItem> result = ContractTestFramework.testInvoke(
+                    contract, function, args, new Signer[0]
+            ).getStack().get(0).getList();
+            for (StackItem elem : result.get(0).getList()) {
+                identifiers.add(elem.getString());
+            }
+            if (result.get(1).getValue() == null) {
+                return identifiers;
+            }
+            cursor = ContractParameter.byteArray(result.get(1).getByteArray());
+        }
+    }
+
+    /**
+     * Query the statistics of the token, return the fields of TokenStatsPojo
+     */
+    public static List<Long> getStats(SmartContract contract, Hash160 token) throws Throwable {
+        var result = ContractTestFramework.testInvoke(
+                contract, "getStats",
+                new ContractParameter[]{
+                        ContractParameter.hash160(token)
+                },
+                new Signer[0]
+        );
+        return result.getStack().get(0).getList().stream()
+                .map(it -> it.getInteger().longValue())
+                .collect(Collectors.toList());
+    }
+
     /**
      * Create WCA, return the identifier
      */
@@ -148,6 +251,42 @@ public class ContractInvokeHelper {
         );
     }
 
+    /**
+     * Finish projects in batch, return how many identifiers are processed
+     */
+    public static BigInteger finishProjects(
+            SmartContract contract, String[] identifiers, long gasReserve, Account account
+    ) throws Throwable {
+        var log = ContractTestFramework.invokeFunction(
+                contract, "finishProjects",
+                new ContractParameter[]{
+                        ContractParameter.array(Arrays.stream(identifiers)
+                                .map(ContractParameter::string)
+                                .collect(Collectors.toList())),
+                        ContractParameter.integer(BigInteger.valueOf(gasReserve))
+                },
+                new Signer[]{
+                        AccountSigner.calledByEntry(account)
+                }
+        );
+        return log.getExecutions().get(0).getStack().get(0).getInteger();
+    }
+
+    public static void claim(
+            SmartContract contract, String identifier, Account buyerAccount, Account callerAccount
+    ) throws Throwable {
+        ContractTestFramework.invokeFunction(
+                contract, "claim",
+                new ContractParameter[]{
+                        ContractParameter.string(identifier),
+                        ContractParameter.hash160(buyerAccount)
+                },
+                new Signer[]{
+                        AccountSigner.calledByEntry(callerAccount)
+                }
+        );
+    }
+
     public static void finishProject(
             SmartContract contract, String identifier, Account account
     ) throws Throwable {
@@ -162,6 +301,26 @@ public class ContractInvokeHelper {
         );
     }
 
+    /**
+     * Continue a cancellation, return true if it is completed
+     */
+    public static boolean continueCancel(
+            SmartContract contract, String identifier, int maxBuyers, long gasReserve, Account account
+    ) throws Throwable {
+        var log = ContractTestFramework.invokeFunction(
+                contract, "continueCancel",
+                new ContractParameter[]{
+                        ContractParameter.string(identifier),
+                        ContractParameter.integer(maxBuyers),
+                        ContractParameter.integer(BigInteger.valueOf(gasReserve))
+                },
+                new Signer[]{
+                        AccountSigner.calledByEntry(account)
+                }
+        );
+        return log.getExecutions().get(0).getStack().get(0).getBoolean();
+    }
+
     public static void cancelProject(
             SmartContract contract, String identifier, Account account
     ) throws Throwable {
@@ -175,4 +334,33 @@ public class ContractInvokeHelper {
                 }
         );
     }
+
+    public static void indexProject(
+            SmartContract contract, String identifier, Account account
+    ) throws Throwable {
+        ContractTestFramework.invokeFunction(
+                contract, "indexProject",
+                new ContractParameter[]{
+                        ContractParameter.string(identifier)
+                },
+                new Signer[]{
+                        AccountSigner.calledByEntry(account)
+                }
+        );
+    }
+
+    public static int migrateMilestones(
+            SmartContract contract, String identifier, Account account
+    ) throws Throwable {
+        var log = ContractTestFramework.invokeFunction(
+                contract, "migrateMilestones",
+                new ContractParameter[]{
+                        ContractParameter.string(identifier)
+                },
+                new Signer[]{
+                        AccountSigner.calledByEntry(account)
+                }
+        );
+        return log.getExecutions().get(0).getStack().get(0).getInteger().intValue();
+    }
 }
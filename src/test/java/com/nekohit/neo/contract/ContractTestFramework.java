@@ -1,16 +1,19 @@
 package com.nekohit.neo.contract;
 
 import com.nekohit.neo.TestUtils;
+import io.neow3j.compiler.Compiler;
 import io.neow3j.contract.FungibleToken;
 import io.neow3j.contract.GasToken;
 import io.neow3j.contract.SmartContract;
 import io.neow3j.protocol.Neow3j;
+import io.neow3j.protocol.ObjectMapperFactory;
 import io.neow3j.protocol.core.response.InvocationResult;
 import io.neow3j.protocol.core.response.NeoApplicationLog;
 import io.neow3j.protocol.core.response.NeoSendRawTransaction;
 import io.neow3j.test.ContractTestExtension;
 import io.neow3j.test.DeployConfig;
 import io.neow3j.test.DeployConfiguration;
+import io.neow3j.transaction.AccountSigner;
 import io.neow3j.transaction.Signer;
 import io.neow3j.transaction.Transaction;
 import io.neow3j.types.ContractParameter;
@@ -26,6 +29,7 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -131,12 +135,29 @@ public class ContractTestFramework {
      */
     protected static void transferToken(
             FungibleToken token, Account account, Hash160 to, long amount, String identifier, boolean wait
+    ) throws Throwable {
+        transferTokenWithData(token, account, to, amount, ContractParameter.string(identifier), wait);
+    }
+
+    /**
+     * Transfer some token with any payload
+     *
+     * @param token   token type
+     * @param account from account
+     * @param to      dest
+     * @param amount  in fraction
+     * @param data    the payload
+     * @param wait    true will wait tx confirmed, false won't wait
+     * @throws Throwable if anything goes wrong
+     */
+    protected static void transferTokenWithData(
+            FungibleToken token, Account account, Hash160 to, long amount, ContractParameter data, boolean wait
     ) throws Throwable {
         Transaction tx;
         if (account == genesisAccount.getMultiSigAccount()) {
             // multi sign
             tx = token.transfer(
-                            genesisAccount.getMultiSigAccount(), to, BigInteger.valueOf(amount), ContractParameter.string(identifier)
+                            genesisAccount.getMultiSigAccount(), to, BigInteger.valueOf(amount), data
                     )
                     .getUnsignedTransaction()
                     .addMultiSigWitness(genesisAccount.getMultiSigAccount().getVerificationScript(),
@@ -145,7 +166,7 @@ public class ContractTestFramework {
         } else {
             // normal account
             tx = token.transfer(
-                    account, to, BigInteger.valueOf(amount), ContractParameter.string(identifier)
+                    account, to, BigInteger.valueOf(amount), data
             ).sign();
         }
 
@@ -167,6 +188,31 @@ public class ContractTestFramework {
         );
     }
 
+    /**
+     * Compile the given contract and deploy it over the WCA contract by update.
+     * The storage is kept, so test fixtures can be swapped in and out.
+     *
+     * @param clazz the contract class, its manifest name must be the same as WCAContract
+     */
+    protected static void updateWcaContract(Class<?> clazz) throws Throwable {
+        var compiled = new Compiler().compile(
+                clazz.getCanonicalName(),
+                Map.of("<CONTRACT_OWNER_ADDRESS_PLACEHOLDER>", CONTRACT_OWNER_ACCOUNT.getAddress())
+        );
+        invokeFunction(
+                getWcaContract(), "update",
+                new ContractParameter[]{
+                        ContractParameter.byteArray(compiled.getNefFile().toArray()),
+                        ContractParameter.string(
+                                ObjectMapperFactory.getObjectMapper().writeValueAsString(compiled.getManifest())
+                        )
+                },
+                new Signer[]{
+                        AccountSigner.calledByEntry(CONTRACT_OWNER_ACCOUNT)
+                }
+        );
+    }
+
     protected static Account getTestAccount() {
         Account account = Account.create();
         try {
@@ -0,0 +1,241 @@
+package com.nekohit.neo.contract;
+
+import com.nekohit.neo.domain.ProjectDynamicContent;
+import com.nekohit.neo.domain.ProjectMilestone;
+import com.nekohit.neo.domain.ProjectStaticContent;
+import com.nekohit.neo.domain.StorageCodec;
+import com.nekohit.neo.helper.Utils;
+import io.neow3j.devpack.Runtime;
+import io.neow3j.devpack.*;
+import io.neow3j.devpack.annotations.DisplayName;
+import io.neow3j.devpack.annotations.Permission;
+import io.neow3j.devpack.annotations.Safe;
+import io.neow3j.devpack.constants.FindOptions;
+import io.neow3j.devpack.contracts.ContractManagement;
+import io.neow3j.devpack.contracts.CryptoLib;
+import io.neow3j.devpack.contracts.StdLib;
+
+import static io.neow3j.devpack.StringLiteralHelper.addressToScriptHash;
+
+/**
+ * Test only. Deployed over WCAContract by update, so it shares the storage,
+ * and puts a project back to the layout before the migrations:
+ * the raw identifier key, the variable-length id, static and dynamic content
+ * serialized as structs with the counters in the dynamic one, milestones
+ * serialized one by one, and no indexes or statistics.
+ * Update back to WCAContract afterwards.
+ */
+@SuppressWarnings("unused")
+@DisplayName("WCAContract")
+// ContractManagement::update
+@Permission(contract = "0xfffdc93764dbaddd97c48f252a53ea4643faa3fd", methods = {"update"})
+public class LegacyLayoutFixture {
+    static final Hash160 OWNER = addressToScriptHash("<CONTRACT_OWNER_ADDRESS_PLACEHOLDER>");
+
+    private static final StorageContext CTX = Storage.getStorageContext();
+
+    private static final StorageMap projectIdentifierMap = CTX.createMap("ID");
+    private static final StorageMap projectStaticContentMap = CTX.createMap("SC");
+    private static final StorageMap projectDynamicContentMap = CTX.createMap("DC");
+    private static final StorageMap projectPurchaseRecordMap = CTX.createMap("PP");
+    private static final StorageMap legacyPurchaseRecordMap = CTX.createMap("PR");
+    private static final StorageMap projectMilestoneMap = CTX.createMap("MS");
+    private static final StorageMap projectScheduleMap = CTX.createMap("MP");
+    private static final StorageMap proofOfWorkMap = CTX.createMap("PW");
+    private static final StorageMap projectRemainTokenMap = CTX.createMap("RT");
+    private static final StorageMap projectPurchasedAmountMap = CTX.createMap("PA");
+    private static final StorageMap projectBuyerCounterMap = CTX.createMap("BC");
+    private static final StorageMap creatorIndexMap = CTX.createMap("IC");
+    private static final StorageMap tokenIndexMap = CTX.createMap("IT");
+    private static final StorageMap buyerIndexMap = CTX.createMap("IB");
+    private static final StorageMap statusIndexMap = CTX.createMap("IS");
+    private static final StorageMap lastExpireIndexMap = CTX.createMap("DL");
+    private static final StorageMap thresholdExpireIndexMap = CTX.createMap("DT");
+    private static final StorageMap tokenStatsMap = CTX.createMap("ST");
+
+    public static void downgradeProject(String identifier) {
+        assert Runtime.checkWitness(OWNER) : "The calling entity is not the owner of this contract.";
+        ByteString key = CryptoLib.sha256(new ByteString(identifier)).take(20);
+        ByteString newId = projectIdentifierMap.get(key);
+        assert newId != null : "Project not found.";
+        ByteString id = Utils.intToByteString(newId.toInt());
+        projectIdentifierMap.delete(key);
+        projectIdentifierMap.put(identifier, id);
+
+        ByteString staticData = projectStaticContentMap.get(newId);
+        ProjectStaticContent staticContent = ProjectStaticContent.fromByteString(staticData);
+        ProjectDynamicContent dynamicContent = ProjectDynamicContent.fromByteString(projectDynamicContentMap.get(newId));
+        dynamicContent.remainTokenCount = projectRemainTokenMap.getInteger(newId);
+        dynamicContent.totalPurchasedAmount = projectPurchasedAmountMap.getInteger(newId);
+        dynamicContent.buyerCounter = projectBuyerCounterMap.getInteger(newId);
+        projectStaticContentMap.delete(newId);
+        projectStaticContentMap.put(id, StdLib.serialize(new LegacyStaticContent(staticContent)));
+        projectDynamicContentMap.delete(newId);
+        projectDynamicContentMap.put(id, StdLib.serialize(new LegacyDynamicContent(dynamicContent)));
+        projectRemainTokenMap.delete(newId);
+        projectPurchasedAmountMap.delete(newId);
+        projectBuyerCounterMap.delete(newId);
+
+        // milestones, one record each at the old key
+        ProjectMilestone[] milestones = ProjectMilestone.scheduleFromByteString(projectScheduleMap.get(newId));
+        projectScheduleMap.delete(newId);
+        for (int i = 0; i < milestones.length; i++) {
+            ByteString proofKey = newId.concat(Utils.intToPaddingByteString(i, 2));
+            ByteString proofOfWork = proofOfWorkMap.get(proofKey);
+            if (proofOfWork != null) {
+                milestones[i].proofOfWork = proofOfWork.toString();
+                proofOfWorkMap.delete(proofKey);
+            }
+            projectMilestoneMap.put(id.concat(Utils.intToPaddingByteString(i, 20)), StdLib.serialize(milestones[i]));
+        }
+
+        // purchase records, there were no buyer index
+        int purchased = 0;
+        Iterator<Iterator.Struct<ByteString, ByteString>> iter = Storage.find(
+                CTX, new ByteString("PP").concat(newId), FindOptions.RemovePrefix);
+        while (iter.next()) {
+            Iterator.Struct<ByteString, ByteString> elem = iter.get();
+            projectPurchaseRecordMap.delete(newId.concat(elem.key));
+            legacyPurchaseRecordMap.put(id.concat(elem.key), elem.value);
+            buyerIndexMap.delete(elem.key.concat(newId));
+            purchased += elem.value.toInt();
+        }
+
+        // no indexes nor statistics
+        int status = dynamicContent.status;
+        creatorIndexMap.delete(staticContent.owner.toByteString().concat(newId));
+        tokenIndexMap.delete(staticContent.tokenHash.toByteString().concat(newId));
+        statusIndexMap.delete(Utils.byteToByteString(status).concat(newId));
+        lastExpireIndexMap.delete(getDeadlineIndexKey(staticContent.lastMilestoneExpireTime, newId));
+        thresholdExpireIndexMap.delete(getDeadlineIndexKey(staticContent.thresholdMilestoneExpireTime, newId));
+        addToStats(staticContent.tokenHash, 16 + status, -1);
+        if (status != 0) {
+            addToStats(staticContent.tokenHash, 0, -staticContent.getTotalStake());
+        }
+        addToStats(staticContent.tokenHash, 1, -purchased);
+    }
+
+    /**
+     * @return the project id under the hashed identifier key, null if it's still under the raw one.
+     */
+    @Safe
+    public static ByteString getHashedProjectId(String identifier) {
+        return projectIdentifierMap.get(CryptoLib.sha256(new ByteString(identifier)).take(20));
+    }
+
+    public static void update(ByteString script, String manifest) {
+        assert Runtime.checkWitness(OWNER) : "The calling entity is not the owner of this contract.";
+        ContractManagement.update(script, manifest);
+    }
+
+
+    private static ByteString getDeadlineIndexKey(int timestamp, ByteString projectId) {
+        return Utils.intToBigEndianByteString(timestamp, StorageCodec.TIME_LENGTH).concat(projectId);
+    }
+
+    private static void addToStats(Hash160 token, int field, int delta) {
+        ByteString key = token.toByteString().concat(Utils.byteToByteString(field));
+        Integer value = tokenStatsMap.getInteger(key);
+        tokenStatsMap.put(key, (value == null ? 0 : value) + delta);
+    }
+
+    /**
+     * The static content as it was serialized by StdLib.
+     */
+    static class LegacyStaticContent {
+        public Hash160 owner;
+        public String description;
+        public int stakeRate100;
+        public int maxTokenSoldCount;
+        public int milestoneCount;
+        public int thresholdIndex;
+        public int coolDownInterval;
+        public int creationTimestamp;
+        public int thresholdMilestoneExpireTime;
+        public int lastMilestoneExpireTime;
+        public boolean bePublic;
+        public Hash160 tokenHash;
+        public Object preserved0;
+        public Object preserved1;
+        public Object preserved2;
+        public Object preserved3;
+        public Object preserved4;
+        public Object preserved5;
+        public Object preserved6;
+        public Object preserved7;
+        public Object preserved8;
+        public Object preserved9;
+
+        LegacyStaticContent(ProjectStaticContent content) {
+            this.owner = content.owner;
+            this.description = content.description;
+            this.stakeRate100 = content.stakeRate100;
+            this.maxTokenSoldCount = content.maxTokenSoldCount;
+            this.milestoneCount = content.milestoneCount;
+            this.thresholdIndex = content.thresholdIndex;
+            this.coolDownInterval = content.coolDownInterval;
+            this.creationTimestamp = content.creationTimestamp;
+            this.thresholdMilestoneExpireTime = content.thresholdMilestoneExpireTime;
+            this.lastMilestoneExpireTime = content.lastMilestoneExpireTime;
+            this.bePublic = content.bePublic;
+            this.tokenHash = content.tokenHash;
+            this.preserved0 = null;
+            this.preserved1 = null;
+            this.preserved2 = null;
+            this.preserved3 = null;
+            this.preserved4 = null;
+            this.preserved5 = null;
+            this.preserved6 = null;
+            this.preserved7 = null;
+            this.preserved8 = null;
+            this.preserved9 = null;
+        }
+    }
+
+    /**
+     * The dynamic content as it was serialized by StdLib, with the counters.
+     */
+    static class LegacyDynamicContent {
+        public int remainTokenCount;
+        public int totalPurchasedAmount;
+        public int buyerCounter;
+        public boolean thresholdMilestonePassed;
+        public boolean lastMilestoneFinished;
+        public int lastUpdateTime;
+        public int finishedMilestoneCount;
+        public int nextMilestoneIndex;
+        public Object preserved0;
+        public Object preserved1;
+        public Object preserved2;
+        public Object preserved3;
+        public Object preserved4;
+        public Object preserved5;
+        public Object preserved6;
+        public Object preserved7;
+        public Object preserved8;
+        public Object preserved9;
+        public int status;
+
+        LegacyDynamicContent(ProjectDynamicContent content) {
+            this.remainTokenCount = content.remainTokenCount;
+            this.totalPurchasedAmount = content.totalPurchasedAmount;
+            this.buyerCounter = content.buyerCounter;
+            this.thresholdMilestonePassed = content.thresholdMilestonePassed;
+            this.lastMilestoneFinished = content.lastMilestoneFinished;
+            this.lastUpdateTime = content.lastUpdateTime;
+            this.finishedMilestoneCount = content.finishedMilestoneCount;
+            this.nextMilestoneIndex = content.nextMilestoneIndex;
+            this.preserved0 = null;
+            this.preserved1 = null;
+            this.preserved2 = null;
+            this.preserved3 = null;
+            this.preserved4 = null;
+            this.preserved5 = null;
+            this.preserved6 = null;
+            this.preserved7 = null;
+            this.preserved8 = null;
+            this.preserved9 = null;
+            this.status = content.status;
+        }
+    }
+}
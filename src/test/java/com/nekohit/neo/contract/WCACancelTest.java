@@ -2,18 +2,24 @@ package com.nekohit.neo.contract;
 
 import com.nekohit.neo.domain.ExceptionMessages;
 import io.neow3j.test.ContractTest;
+import io.neow3j.transaction.AccountSigner;
+import io.neow3j.transaction.Signer;
 import io.neow3j.transaction.exceptions.TransactionConfigurationException;
+import io.neow3j.types.ContractParameter;
 import io.neow3j.wallet.Account;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * This class test the cancel method for WCA.
  * Including general check(caller, invalid id, double cancel),
- * ok to cancel(pending and open),
- * shouldn't cancel(active and finished).
+ * ok to cancel(pending and open), cancel with more buyers than a batch,
+ * shouldn't cancel(active and finished),
+ * continue cancel on a project which is not cancelling.
  */
 @ContractTest(blockTime = 1, contracts = {
         CatToken.class,
@@ -146,6 +152,59 @@ public class WCACancelTest extends ContractTestFramework {
         assertEquals(creatorOldBalance + staked, creatorNewBalance);
     }
 
+    @Test
+    void testCancelManyBuyers() throws Throwable {
+        var totalAmount = 1000_00;
+        var stakeRate = 10;
+        var identifier = "test_cancel_many_buyers_" + System.currentTimeMillis();
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), stakeRate, totalAmount,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 10 * 60 * 1000},
+                0, 1, false,
+                identifier, this.creatorAccount
+        );
+        // more buyers than cancelProject refunds at once
+        var buyers = new ArrayList<Account>();
+        for (int i = 0; i < 51; i++) {
+            var buyer = getTestAccount();
+            transferToken(getCatToken(), buyer, getWcaContractAddress(), 1_00, identifier, true);
+            buyers.add(buyer);
+        }
+
+        ContractInvokeHelper.cancelProject(getWcaContract(), identifier, this.creatorAccount);
+        var pojo = ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier);
+        assertEquals("CANCELLING", pojo.get(15).getString());
+
+        var log = invokeFunction(
+                getWcaContract(), "continueCancel",
+                new ContractParameter[]{
+                        ContractParameter.string(identifier),
+                        ContractParameter.integer(10),
+                        ContractParameter.integer(0)
+                },
+                new Signer[]{
+                        AccountSigner.calledByEntry(this.testAccount)
+                }
+        );
+        var execution = log.getExecutions().get(0);
+        assertTrue(execution.getStack().get(0).getBoolean());
+        assertTrue(execution.getNotifications().stream().anyMatch(
+                it -> it.getEventName().equals("CancelProject")
+                        && it.getState().getList().get(0).getString().equals(identifier)
+        ));
+        // every buyer got the tokens back
+        for (Account buyer : buyers) {
+            assertEquals(10000_00, getCatToken().getBalanceOf(buyer).longValue());
+        }
+        assertThrows(
+                Exception.class,
+                () -> ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier)
+        );
+    }
+
     @Test
     void testCancelActive() throws Throwable {
         var identifier = "test_cancel_active" + System.currentTimeMillis();
@@ -238,4 +297,28 @@ public class WCACancelTest extends ContractTestFramework {
                 "Unknown exception: " + throwable.getMessage()
         );
     }
+
+    @Test
+    void testContinueCancelNotCancelling() throws Throwable {
+        var identifier = "test_continue_cancel_" + System.currentTimeMillis();
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 1_00, 1_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 100, false,
+                identifier, this.creatorAccount
+        );
+        var throwable = assertThrows(
+                TransactionConfigurationException.class,
+                () -> ContractInvokeHelper.continueCancel(
+                        getWcaContract(), identifier, 10, 0, this.testAccount
+                )
+        );
+        assertTrue(
+                throwable.getMessage().contains(ExceptionMessages.INVALID_STATUS_ALLOW_CANCELLING),
+                "Unknown exception: " + throwable.getMessage()
+        );
+    }
 }
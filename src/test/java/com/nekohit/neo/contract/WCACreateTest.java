@@ -6,6 +6,7 @@ import io.neow3j.transaction.AccountSigner;
 import io.neow3j.transaction.Signer;
 import io.neow3j.transaction.exceptions.TransactionConfigurationException;
 import io.neow3j.types.ContractParameter;
+import io.neow3j.types.Hash160;
 import io.neow3j.wallet.Account;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -314,4 +315,26 @@ public class WCACreateTest extends ContractTestFramework {
                 )
         );
     }
+
+    @Test
+    void testLongIdentifier() throws Throwable {
+        // longer than the 64 bytes storage key limit
+        var identifier = "test_create_long_identifier_" + "x".repeat(100) + System.currentTimeMillis();
+        ContractInvokeHelper.declareProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 100, 1000,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 100, true,
+                identifier, this.testAccount
+        );
+        var pojo = ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier);
+        assertEquals(identifier, pojo.get(0).getString());
+        // listed by the identifier kept in the static content
+        var listed = ContractInvokeHelper.advanceQueryIdentifiers(
+                getWcaContract(), Hash160.ZERO, Hash160.ZERO, Hash160.ZERO, 1, 100
+        );
+        assertTrue(listed.contains(identifier));
+    }
 }
@@ -12,7 +12,8 @@ import static org.junit.jupiter.api.Assertions.*;
 /**
  * This class test the finish wca method for WCA.
  * Including invalid id, unpaid, not ready to finish(last ms not finished nor expired),
- * owner override, double finished, normal op(check token distribution)
+ * owner override, double finished, normal op(check token distribution),
+ * claim before finish and double claim.
  */
 @ContractTest(blockTime = 1, contracts = {
         CatToken.class,
@@ -248,6 +249,13 @@ public class WCAFinishWCATest extends ContractTestFramework {
         ContractInvokeHelper.finishMilestone(
                 getWcaContract(), identifier, 2, "something", this.creatorAccount
         );
+        // buyers claim their part, anyone can do it for them
+        ContractInvokeHelper.claim(
+                getWcaContract(), identifier, this.buyerAccount1, this.buyerAccount1
+        );
+        ContractInvokeHelper.claim(
+                getWcaContract(), identifier, this.buyerAccount2, this.creatorAccount
+        );
         var creatorNewBalance = getCatToken().getBalanceOf(this.creatorAccount).longValue();
         var buyer1NewBalance = getCatToken().getBalanceOf(this.buyerAccount1).longValue();
         var buyer2NewBalance = getCatToken().getBalanceOf(this.buyerAccount2).longValue();
@@ -264,4 +272,170 @@ public class WCAFinishWCATest extends ContractTestFramework {
                 + (totalAmount - buyer1Purchase - buyer2Purchase) * stakeRate / 100;
         assertEquals(creatorOldBalance + creatorGet, creatorNewBalance);
     }
+
+    @Test
+    void testClaimNotFinished() throws Throwable {
+        var identifier = "test_claim_not_finished_wca_" + System.currentTimeMillis();
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 10, 1000_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 100, false,
+                identifier, this.creatorAccount
+        );
+        transferToken(
+                getCatToken(), this.buyerAccount1,
+                getWcaContractAddress(),
+                100_00, identifier, true
+        );
+        var throwable = assertThrows(
+                TransactionConfigurationException.class,
+                () -> ContractInvokeHelper.claim(
+                        getWcaContract(), identifier, this.buyerAccount1, this.buyerAccount1
+                )
+        );
+        assertTrue(
+                throwable.getMessage().contains(ExceptionMessages.INVALID_STATUS_ALLOW_FINISHED),
+                "Unknown exception: " + throwable.getMessage()
+        );
+    }
+
+    @Test
+    void testDoubleClaim() throws Throwable {
+        var identifier = "test_double_claim_wca_" + System.currentTimeMillis();
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 10, 1000_00,
+                new String[]{"milestone1", "milestone2"},
+                new String[]{"milestone1", "milestone2"},
+                new Long[]{
+                        System.currentTimeMillis() + 60 * 1000,
+                        System.currentTimeMillis() + 61 * 1000
+                },
+                0, 100, false,
+                identifier, this.creatorAccount
+        );
+        transferToken(
+                getCatToken(), this.buyerAccount1,
+                getWcaContractAddress(),
+                100_00, identifier, true
+        );
+        transferToken(
+                getCatToken(), this.buyerAccount2,
+                getWcaContractAddress(),
+                100_00, identifier, true
+        );
+        // finish the last one, so the first one is unfinished
+        ContractInvokeHelper.finishMilestone(
+                getWcaContract(), identifier, 1, "something", this.creatorAccount
+        );
+        ContractInvokeHelper.claim(
+                getWcaContract(), identifier, this.buyerAccount1, this.buyerAccount1
+        );
+        var throwable = assertThrows(
+                TransactionConfigurationException.class,
+                () -> ContractInvokeHelper.claim(
+                        getWcaContract(), identifier, this.buyerAccount1, this.buyerAccount1
+                )
+        );
+        assertTrue(
+                throwable.getMessage().contains(ExceptionMessages.RECORD_NOT_FOUND),
+                "Unknown exception: " + throwable.getMessage()
+        );
+    }
+
+    @Test
+    void testFinishProjectsSkipIneligible() throws Throwable {
+        var identifier = "test_finish_projects_wca_" + System.currentTimeMillis();
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 10, 1000_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 100, false,
+                identifier, this.creatorAccount
+        );
+        // one doesn't exist, the other is not ready to finish, both are skipped
+        var processed = ContractInvokeHelper.finishProjects(
+                getWcaContract(), new String[]{"some_invalid_id", identifier}, 0, this.buyerAccount1
+        );
+        assertEquals(2, processed.intValue());
+        var pojo = ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier);
+        assertEquals("ONGOING", pojo.get(15).getString());
+    }
+
+    @Test
+    void testFinishProjectsSettle() throws Throwable {
+        var buyerPurchase = 400_00;
+        var totalAmount = 1000_00;
+        var stakeRate = 10;
+        var identifier = "test_finish_projects_settle_wca_" + System.currentTimeMillis();
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), stakeRate, totalAmount,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 10 * 1000},
+                0, 1, false,
+                identifier, this.creatorAccount
+        );
+        transferToken(
+                getCatToken(), this.buyerAccount1,
+                getWcaContractAddress(),
+                buyerPurchase, identifier, true
+        );
+        // let the only milestone expire unfinished
+        Thread.sleep(10 * 1000);
+
+        var creatorOldBalance = getCatToken().getBalanceOf(this.creatorAccount).longValue();
+        var buyerOldBalance = getCatToken().getBalanceOf(this.buyerAccount1).longValue();
+        var processed = ContractInvokeHelper.finishProjects(
+                getWcaContract(), new String[]{identifier}, 0, this.buyerAccount2
+        );
+        assertEquals(1, processed.intValue());
+        var pojo = ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier);
+        assertEquals("FINISHED", pojo.get(15).getString());
+        // creator gets the stake of unsold tokens
+        var creatorGet = (totalAmount - buyerPurchase) * stakeRate / 100;
+        assertEquals(creatorOldBalance + creatorGet, getCatToken().getBalanceOf(this.creatorAccount).longValue());
+        // no milestone is finished, buyer gets all back
+        ContractInvokeHelper.claim(
+                getWcaContract(), identifier, this.buyerAccount1, this.buyerAccount1
+        );
+        var buyerTotal = buyerPurchase + buyerPurchase * stakeRate / 100;
+        assertEquals(buyerOldBalance + buyerTotal, getCatToken().getBalanceOf(this.buyerAccount1).longValue());
+    }
+
+    @Test
+    void testFinishProjectsStopForGas() throws Throwable {
+        var identifier = "test_finish_projects_gas_wca_" + System.currentTimeMillis();
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 10, 1000_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 2 * 1000},
+                0, 100, false,
+                identifier, this.creatorAccount
+        );
+        // let the last one expire, so it's ready to finish
+        Thread.sleep(2 * 1000);
+        // no transaction has 1000 GAS left, stop before the first one
+        var processed = ContractInvokeHelper.finishProjects(
+                getWcaContract(), new String[]{identifier}, 1000_0000_0000L, this.buyerAccount1
+        );
+        assertEquals(0, processed.intValue());
+        var pojo = ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier);
+        assertEquals("ONGOING", pojo.get(15).getString());
+        // continue without reserve
+        processed = ContractInvokeHelper.finishProjects(
+                getWcaContract(), new String[]{identifier}, 0, this.buyerAccount1
+        );
+        assertEquals(1, processed.intValue());
+        pojo = ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier);
+        assertEquals("FINISHED", pojo.get(15).getString());
+    }
 }
@@ -0,0 +1,239 @@
+package com.nekohit.neo.contract;
+
+import io.neow3j.test.ContractTest;
+import io.neow3j.transaction.AccountSigner;
+import io.neow3j.transaction.Signer;
+import io.neow3j.types.ContractParameter;
+import io.neow3j.wallet.Account;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class test the migration of projects stored in the old layout.
+ * The old layout is made by {@link LegacyLayoutFixture}, which is swapped in
+ * by updating the WCA contract, then WCAContract is swapped back.
+ */
+@ContractTest(blockTime = 1, contracts = {
+        CatToken.class,
+        WCAContract.class,
+})
+public class WCAMigrationTest extends ContractTestFramework {
+    private Account creatorAccount;
+    private Account buyerAccount;
+
+    @BeforeEach
+    void setUp() {
+        creatorAccount = getTestAccount();
+        buyerAccount = getTestAccount();
+    }
+
+    @Test
+    void testMigrateProjectId() throws Throwable {
+        var identifier = "test_migrate_project_id_" + System.currentTimeMillis();
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 10, 1000_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 100, false,
+                identifier, this.creatorAccount
+        );
+        transferToken(getCatToken(), this.buyerAccount, getWcaContractAddress(), 100, identifier, true);
+        downgradeProject(identifier);
+        assertNull(getHashedProjectId(identifier));
+        // reads work before migration
+        assertEquals(100, ContractInvokeHelper.queryPurchase(getWcaContract(), identifier, this.buyerAccount).intValue());
+
+        // the next write migrates it
+        transferToken(getCatToken(), this.buyerAccount, getWcaContractAddress(), 50, identifier, true);
+        var projectId = getHashedProjectId(identifier);
+        assertNotNull(projectId);
+        assertEquals(4, projectId.length);
+        assertEquals(150, ContractInvokeHelper.queryPurchase(getWcaContract(), identifier, this.buyerAccount).intValue());
+        var pojo = ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier);
+        assertEquals(identifier, pojo.get(0).getString());
+        assertEquals("ONGOING", pojo.get(15).getString());
+    }
+
+    @Test
+    void testKeepShortProjectId() throws Throwable {
+        var identifier = "test_keep_short_project_id_" + System.currentTimeMillis();
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 10, 1000_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 100, false,
+                identifier, this.creatorAccount
+        );
+        // more purchase records than a migration walks
+        for (int i = 0; i < 51; i++) {
+            transferToken(getCatToken(), getTestAccount(), getWcaContractAddress(), 1, identifier, true);
+        }
+        downgradeProject(identifier);
+
+        transferToken(getCatToken(), this.buyerAccount, getWcaContractAddress(), 100, identifier, true);
+        var projectId = getHashedProjectId(identifier);
+        assertNotNull(projectId);
+        assertTrue(projectId.length < 4);
+        assertEquals(100, ContractInvokeHelper.queryPurchase(getWcaContract(), identifier, this.buyerAccount).intValue());
+        // the records stay under the old prefix, and only this project's are listed
+        var records = testInvoke(
+                getWcaContract(), "dumpPurchaseRecord",
+                new ContractParameter[]{
+                        ContractParameter.string(identifier),
+                        ContractParameter.integer(1),
+                        ContractParameter.integer(100)
+                },
+                new Signer[0]
+        ).getStack().get(0).getList();
+        assertEquals(52, records.size());
+        var pojo = ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier);
+        assertEquals(identifier, pojo.get(0).getString());
+    }
+
+    @Test
+    void testCountLegacyProject() throws Throwable {
+        var identifier = "test_count_legacy_project_" + System.currentTimeMillis();
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 10, 1000_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 100, false,
+                identifier, this.creatorAccount
+        );
+        transferToken(getCatToken(), this.buyerAccount, getWcaContractAddress(), 100, identifier, true);
+        downgradeProject(identifier);
+        var oldStats = ContractInvokeHelper.getStats(getWcaContract(), getCatTokenAddress());
+
+        // not counted before indexed
+        transferToken(getCatToken(), this.buyerAccount, getWcaContractAddress(), 50, identifier, true);
+        ContractInvokeHelper.refund(getWcaContract(), identifier, this.buyerAccount);
+        var buyer = getTestAccount();
+        transferToken(getCatToken(), buyer, getWcaContractAddress(), 30, identifier, true);
+        assertEquals(oldStats, ContractInvokeHelper.getStats(getWcaContract(), getCatTokenAddress()));
+
+        // counted with the tokens still held
+        ContractInvokeHelper.indexProject(getWcaContract(), identifier, CONTRACT_OWNER_ACCOUNT);
+        var newStats = ContractInvokeHelper.getStats(getWcaContract(), getCatTokenAddress());
+        // staked, purchased, refunded, settled
+        assertEquals(100_00, newStats.get(0) - oldStats.get(0));
+        assertEquals(30, newStats.get(1) - oldStats.get(1));
+        assertEquals(0, newStats.get(2) - oldStats.get(2));
+        assertEquals(0, newStats.get(3) - oldStats.get(3));
+        // pending, ongoing
+        assertEquals(0, newStats.get(4) - oldStats.get(4));
+        assertEquals(1, newStats.get(5) - oldStats.get(5));
+
+        // indexing again changes nothing
+        ContractInvokeHelper.indexProject(getWcaContract(), identifier, CONTRACT_OWNER_ACCOUNT);
+        assertEquals(newStats, ContractInvokeHelper.getStats(getWcaContract(), getCatTokenAddress()));
+
+        ContractInvokeHelper.refund(getWcaContract(), identifier, buyer);
+        var refundedStats = ContractInvokeHelper.getStats(getWcaContract(), getCatTokenAddress());
+        assertEquals(30, refundedStats.get(2) - newStats.get(2));
+    }
+
+    @Test
+    void testMigrateMilestones() throws Throwable {
+        var identifier = "test_migrate_milestones_" + System.currentTimeMillis();
+        var endTimestamp = System.currentTimeMillis() + 60 * 1000;
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 10, 1000_00,
+                new String[]{"title1", "title2"},
+                new String[]{"description1", "description2"},
+                new Long[]{endTimestamp, endTimestamp + 60 * 1000},
+                0, 100, false,
+                identifier, this.creatorAccount
+        );
+        ContractInvokeHelper.finishMilestone(getWcaContract(), identifier, 0, "proof", this.creatorAccount);
+        downgradeProject(identifier);
+
+        assertEquals(2, ContractInvokeHelper.migrateMilestones(getWcaContract(), identifier, CONTRACT_OWNER_ACCOUNT));
+        // already moved
+        assertEquals(0, ContractInvokeHelper.migrateMilestones(getWcaContract(), identifier, CONTRACT_OWNER_ACCOUNT));
+
+        var milestones = ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier).get(8).getList();
+        assertEquals(2, milestones.size());
+        var first = milestones.get(0).getList();
+        assertEquals("title1", first.get(0).getString());
+        assertEquals("description1", first.get(1).getString());
+        assertEquals(endTimestamp, first.get(2).getInteger().longValue());
+        assertEquals("proof", first.get(3).getString());
+        var second = milestones.get(1).getList();
+        assertEquals("title2", second.get(0).getString());
+        assertEquals(endTimestamp + 60 * 1000, second.get(2).getInteger().longValue());
+        assertNull(second.get(3).getValue());
+
+        // the migrated schedule takes new proof
+        ContractInvokeHelper.finishMilestone(getWcaContract(), identifier, 1, "proof2", this.creatorAccount);
+        milestones = ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier).get(8).getList();
+        assertEquals("proof", milestones.get(0).getList().get(3).getString());
+        assertEquals("proof2", milestones.get(1).getList().get(3).getString());
+    }
+
+    @Test
+    void testKeepLegacyCounters() throws Throwable {
+        var identifier = "test_keep_legacy_counters_" + System.currentTimeMillis();
+        var endTimestamp = System.currentTimeMillis() + 60 * 1000;
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 10, 1000_00,
+                new String[]{"title1", "title2"},
+                new String[]{"description1", "description2"},
+                new Long[]{endTimestamp, endTimestamp + 60 * 1000},
+                0, 100, false,
+                identifier, this.creatorAccount
+        );
+        transferToken(getCatToken(), this.buyerAccount, getWcaContractAddress(), 100, identifier, true);
+        downgradeProject(identifier);
+
+        // the counters were in the old dynamic record, which is rewritten here
+        ContractInvokeHelper.finishMilestone(getWcaContract(), identifier, 0, "proof", this.creatorAccount);
+        var project = ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier);
+        assertEquals(1000_00 - 100, project.get(13).getInteger().longValue());
+        assertEquals(1, project.get(14).getInteger().longValue());
+
+        var creatorOldBalance = getCatToken().getBalanceOf(this.creatorAccount).longValue();
+        var buyerOldBalance = getCatToken().getBalanceOf(this.buyerAccount).longValue();
+        ContractInvokeHelper.finishProject(getWcaContract(), identifier, this.creatorAccount);
+        ContractInvokeHelper.claim(getWcaContract(), identifier, this.buyerAccount, this.buyerAccount);
+        // 1 of 2 milestones unfinished: buyer get half of (100 + 10), creator get the rest
+        assertEquals(buyerOldBalance + 55, getCatToken().getBalanceOf(this.buyerAccount).longValue());
+        assertEquals(creatorOldBalance + 100_00 + 100 - 55, getCatToken().getBalanceOf(this.creatorAccount).longValue());
+    }
+
+    private void downgradeProject(String identifier) throws Throwable {
+        updateWcaContract(LegacyLayoutFixture.class);
+        invokeFunction(
+                getWcaContract(), "downgradeProject",
+                new ContractParameter[]{
+                        ContractParameter.string(identifier)
+                },
+                new Signer[]{
+                        AccountSigner.calledByEntry(CONTRACT_OWNER_ACCOUNT)
+                }
+        );
+        updateWcaContract(WCAContract.class);
+    }
+
+    private byte[] getHashedProjectId(String identifier) throws Throwable {
+        updateWcaContract(LegacyLayoutFixture.class);
+        var item = testInvoke(
+                getWcaContract(), "getHashedProjectId",
+                new ContractParameter[]{
+                        ContractParameter.string(identifier)
+                },
+                new Signer[0]
+        ).getStack().get(0);
+        updateWcaContract(WCAContract.class);
+        return item.getValue() == null ? null : item.getByteArray();
+    }
+}
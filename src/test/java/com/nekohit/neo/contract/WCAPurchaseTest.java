@@ -3,6 +3,7 @@ package com.nekohit.neo.contract;
 import com.nekohit.neo.domain.ExceptionMessages;
 import io.neow3j.test.ContractTest;
 import io.neow3j.transaction.exceptions.TransactionConfigurationException;
+import io.neow3j.types.ContractParameter;
 import io.neow3j.wallet.Account;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -331,4 +332,60 @@ public class WCAPurchaseTest extends ContractTestFramework {
                 )
         );
     }
+
+    @Test
+    void testPurchaseCounters() throws Throwable {
+        var anotherBuyer = getTestAccount();
+        var identifier = "test_purchase_counters_" + System.currentTimeMillis();
+        // create WCA
+        ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 1_00, 1000_00,
+                new String[]{"milestone"},
+                new String[]{"milestone"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 100, false,
+                identifier, this.creatorAccount
+        );
+        transferToken(getCatToken(), this.testAccount, getWcaContractAddress(), 100_00, identifier, true);
+        transferToken(getCatToken(), this.testAccount, getWcaContractAddress(), 200_00, identifier, true);
+        transferToken(getCatToken(), anotherBuyer, getWcaContractAddress(), 300_00, identifier, true);
+
+        var pojo = ContractInvokeHelper.queryProjectProto(getWcaContract(), identifier);
+        // remain token count
+        assertEquals(400_00, pojo.get(13).getInteger().longValue());
+        // buyer count
+        assertEquals(2, pojo.get(14).getInteger().longValue());
+        assertEquals(300_00, ContractInvokeHelper.queryPurchase(
+                getWcaContract(), identifier, this.testAccount).longValue());
+    }
+
+    @Test
+    void testBatchPurchase() throws Throwable {
+        var identifier1 = "test_batch_purchase_1_" + System.currentTimeMillis();
+        var identifier2 = "test_batch_purchase_2_" + System.currentTimeMillis();
+        for (var identifier : new String[]{identifier1, identifier2}) {
+            ContractInvokeHelper.createAndPayProject(
+                    getWcaContract(), "description",
+                    getCatTokenAddress(), 1_00, 1000_00,
+                    new String[]{"milestone"},
+                    new String[]{"milestone"},
+                    new Long[]{System.currentTimeMillis() + 60 * 1000},
+                    0, 100, false,
+                    identifier, this.creatorAccount
+            );
+        }
+        transferTokenWithData(
+                getCatToken(), this.testAccount, getWcaContractAddress(), 300_00,
+                ContractParameter.array(
+                        ContractParameter.array(ContractParameter.string(identifier1), ContractParameter.integer(100_00)),
+                        ContractParameter.array(ContractParameter.string(identifier2), ContractParameter.integer(200_00))
+                ), true
+        );
+
+        assertEquals(100_00, ContractInvokeHelper.queryPurchase(
+                getWcaContract(), identifier1, this.testAccount).longValue());
+        assertEquals(200_00, ContractInvokeHelper.queryPurchase(
+                getWcaContract(), identifier2, this.testAccount).longValue());
+    }
 }
@@ -13,6 +13,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 
 import static com.nekohit.neo.contract.ContractInvokeHelper.queryProject;
@@ -82,6 +84,55 @@ public class WCAQueryTest extends ContractTestFramework {
         }
     }
 
+    @Test
+    void testDumpPurchaseRecordByCursor() throws Throwable {
+        var buyers = new Account[]{getTestAccount(), getTestAccount(), getTestAccount()};
+        // create WCA
+        var identifier = ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 1_00, 1000_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{
+                        System.currentTimeMillis() + 60 * 1000
+                },
+                0, 1, false,
+                "test_dump_pr_cursor_" + System.currentTimeMillis(),
+                this.creatorAccount
+        );
+        for (Account buyer : buyers) {
+            transferToken(getCatToken(), buyer, getWcaContractAddress(), 10_00, identifier, true);
+        }
+        // walk through with page size 2
+        ContractParameter cursor = ContractParameter.any(null);
+        var seen = new HashSet<String>();
+        while (true) {
+            List<StackItem> result = testInvoke(
+                    getWcaContract(),
+                    "dumpPurchaseRecordByCursor",
+                    new ContractParameter[]{
+                            ContractParameter.string(identifier),
+                            cursor,
+                            ContractParameter.integer(2)
+                    },
+                    new Signer[]{}
+            ).getStack().get(0).getList();
+            for (StackItem elem : result.get(0).getList()) {
+                List<StackItem> pair = elem.getList();
+                assertTrue(seen.add(pair.get(0).getAddress()));
+                assertEquals(10_00, pair.get(1).getInteger().longValue());
+            }
+            if (result.get(1).getValue() == null) {
+                break;
+            }
+            cursor = ContractParameter.byteArray(result.get(1).getByteArray());
+        }
+        assertEquals(buyers.length, seen.size());
+        for (Account buyer : buyers) {
+            assertTrue(seen.contains(buyer.getAddress()));
+        }
+    }
+
     @Test
     void testInvalidQueryWCA() {
         assertEquals(
@@ -109,6 +160,47 @@ public class WCAQueryTest extends ContractTestFramework {
         );
     }
 
+    @Test
+    void testQueryDecodedFields() throws Throwable {
+        var endTimestamp = System.currentTimeMillis() + 60 * 1000;
+        var identifier = ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "some description",
+                getCatTokenAddress(), 12, 345_00,
+                new String[]{"title1", "title2"},
+                new String[]{"description1", "description2"},
+                new Long[]{endTimestamp, endTimestamp + 1000},
+                1, 678, true,
+                "test_query_decoded_fields_" + System.currentTimeMillis(),
+                this.creatorAccount
+        );
+        ContractInvokeHelper.finishMilestone(getWcaContract(), identifier, 0, "proof", this.creatorAccount);
+
+        List<StackItem> pojo = testInvoke(
+                getWcaContract(), "queryProjectProto",
+                new ContractParameter[]{ContractParameter.string(identifier)},
+                new Signer[0]
+        ).getStack().get(0).getList();
+        assertEquals(identifier, pojo.get(0).getString());
+        assertEquals("some description", pojo.get(1).getString());
+        assertEquals(12, pojo.get(5).getInteger().intValue());
+        assertEquals(345_00, pojo.get(6).getInteger().intValue());
+        assertEquals(2, pojo.get(7).getInteger().intValue());
+        assertEquals(1, pojo.get(9).getInteger().intValue());
+        assertEquals(678, pojo.get(10).getInteger().intValue());
+        assertEquals(1, pojo.get(12).getInteger().intValue());
+        assertEquals("ONGOING", pojo.get(15).getString());
+
+        List<StackItem> milestones = pojo.get(8).getList();
+        List<StackItem> first = milestones.get(0).getList();
+        assertEquals("title1", first.get(0).getString());
+        assertEquals("description1", first.get(1).getString());
+        assertEquals(endTimestamp, first.get(2).getInteger().longValue());
+        assertEquals("proof", first.get(3).getString());
+        List<StackItem> second = milestones.get(1).getList();
+        assertEquals("title2", second.get(0).getString());
+        assertNull(second.get(3).getValue());
+    }
+
     @Test
     void testInvalidIdQueryPurchase() {
         assertEquals(
@@ -273,4 +365,279 @@ public class WCAQueryTest extends ContractTestFramework {
                 Hash160.ZERO, Hash160.ZERO, 1, 20
         )));
     }
+
+    @Test
+    void testAdvancedQueryByIndex() throws Throwable {
+        var otherCreator = getTestAccount();
+        var buyerAccount = getTestAccount();
+        var ownProject = ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 1_00, 2_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 1, true,
+                "test_index_own_" + System.currentTimeMillis(),
+                this.creatorAccount
+        );
+        var otherProject = ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 1_00, 2_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 1, true,
+                "test_index_other_" + System.currentTimeMillis(),
+                otherCreator
+        );
+        transferToken(getCatToken(), buyerAccount, getWcaContractAddress(), 1_00, otherProject, true);
+
+        var byCreator = ContractInvokeHelper.advanceQueryIdentifiers(
+                getWcaContract(), Hash160.ZERO,
+                this.creatorAccount.getScriptHash(), Hash160.ZERO, 1, 20
+        );
+        assertEquals(List.of(ownProject), byCreator);
+
+        var byBuyer = ContractInvokeHelper.advanceQueryIdentifiers(
+                getWcaContract(), Hash160.ZERO,
+                Hash160.ZERO, buyerAccount.getScriptHash(), 1, 20
+        );
+        assertEquals(List.of(otherProject), byBuyer);
+
+        // refund will remove the project from buyer's index
+        ContractInvokeHelper.refund(getWcaContract(), otherProject, buyerAccount);
+        assertTrue(ContractInvokeHelper.advanceQueryIdentifiers(
+                getWcaContract(), Hash160.ZERO,
+                Hash160.ZERO, buyerAccount.getScriptHash(), 1, 20
+        ).isEmpty());
+    }
+
+    @Test
+    void testListByStatus() throws Throwable {
+        var identifier = ContractInvokeHelper.declareProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 1_00, 1000_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 1, false,
+                "test_list_by_status_" + System.currentTimeMillis(),
+                this.creatorAccount
+        );
+        assertTrue(ContractInvokeHelper.listByStatus(getWcaContract(), 0).contains(identifier));
+        assertFalse(ContractInvokeHelper.listByStatus(getWcaContract(), 1).contains(identifier));
+
+        // pay stake
+        transferToken(getCatToken(), this.creatorAccount, getWcaContractAddress(), 1000_00, identifier, true);
+        assertFalse(ContractInvokeHelper.listByStatus(getWcaContract(), 0).contains(identifier));
+        assertTrue(ContractInvokeHelper.listByStatus(getWcaContract(), 1).contains(identifier));
+
+        // cancel
+        ContractInvokeHelper.cancelProject(getWcaContract(), identifier, this.creatorAccount);
+        assertFalse(ContractInvokeHelper.listByStatus(getWcaContract(), 1).contains(identifier));
+        assertFalse(ContractInvokeHelper.listByStatus(getWcaContract(), 3).contains(identifier));
+    }
+
+    @Test
+    void testListExpiringBefore() throws Throwable {
+        var lastExpire = System.currentTimeMillis() + 60 * 1000;
+        var identifier = ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 1_00, 1000_00,
+                new String[]{"milestone1", "milestone2"},
+                new String[]{"milestone1", "milestone2"},
+                new Long[]{lastExpire - 1000, lastExpire},
+                0, 1, false,
+                "test_list_expiring_" + System.currentTimeMillis(),
+                this.creatorAccount
+        );
+        assertFalse(ContractInvokeHelper.listExpiringBefore(getWcaContract(), lastExpire - 1).contains(identifier));
+        assertTrue(ContractInvokeHelper.listExpiringBefore(getWcaContract(), lastExpire).contains(identifier));
+
+        // finished projects are removed from the index
+        ContractInvokeHelper.finishProject(getWcaContract(), identifier, this.creatorAccount);
+        assertFalse(ContractInvokeHelper.listExpiringBefore(getWcaContract(), lastExpire).contains(identifier));
+    }
+
+    @Test
+    void testListExpiringBeforePaging() throws Throwable {
+        var lastExpire = System.currentTimeMillis() + 60 * 1000;
+        var identifiers = new String[3];
+        for (int i = 0; i < identifiers.length; i++) {
+            identifiers[i] = ContractInvokeHelper.declareProject(
+                    getWcaContract(), "description",
+                    getCatTokenAddress(), 1_00, 1000_00,
+                    new String[]{"milestone1"},
+                    new String[]{"milestone1"},
+                    new Long[]{lastExpire + i},
+                    0, 1, false,
+                    "test_list_expiring_paging_" + i + "_" + System.currentTimeMillis(),
+                    this.creatorAccount
+            );
+        }
+        // pending projects are not indexed
+        assertFalse(ContractInvokeHelper.listExpiringBefore(getWcaContract(), lastExpire + 2).contains(identifiers[0]));
+
+        for (String identifier : identifiers) {
+            transferToken(getCatToken(), this.creatorAccount, getWcaContractAddress(), 1000_00, identifier, true);
+        }
+        // one per page, the cursor seeks to the next one
+        var listed = ContractInvokeHelper.listExpiringBefore(getWcaContract(), lastExpire + 2, 1);
+        assertTrue(listed.indexOf(identifiers[0]) >= 0);
+        assertTrue(listed.indexOf(identifiers[0]) < listed.indexOf(identifiers[1]));
+        assertTrue(listed.indexOf(identifiers[1]) < listed.indexOf(identifiers[2]));
+        assertEquals(listed.size(), new HashSet<>(listed).size());
+        assertFalse(ContractInvokeHelper.listExpiringBefore(getWcaContract(), lastExpire + 1, 1).contains(identifiers[2]));
+
+        // cancelled projects are removed from the index
+        ContractInvokeHelper.cancelProject(getWcaContract(), identifiers[1], this.creatorAccount);
+        assertFalse(ContractInvokeHelper.listExpiringBefore(getWcaContract(), lastExpire + 2).contains(identifiers[1]));
+    }
+
+    @Test
+    void testQueryBuyerProjects() throws Throwable {
+        var buyer = getTestAccount();
+        var identifiers = new String[]{
+                "test_buyer_projects_1_" + System.currentTimeMillis(),
+                "test_buyer_projects_2_" + System.currentTimeMillis()
+        };
+        for (int i = 0; i < identifiers.length; i++) {
+            ContractInvokeHelper.createAndPayProject(
+                    getWcaContract(), "description",
+                    getCatTokenAddress(), 1_00, 1000_00,
+                    new String[]{"milestone1"},
+                    new String[]{"milestone1"},
+                    new Long[]{System.currentTimeMillis() + 60 * 1000},
+                    0, 1, false,
+                    identifiers[i], this.creatorAccount
+            );
+            transferToken(getCatToken(), buyer, getWcaContractAddress(), (i + 1) * 10_00, identifiers[i], true);
+        }
+
+        List<StackItem> result = testInvoke(
+                getWcaContract(),
+                "queryBuyerProjects",
+                new ContractParameter[]{
+                        ContractParameter.hash160(buyer),
+                        ContractParameter.any(null),
+                        ContractParameter.integer(10)
+                },
+                new Signer[]{}
+        ).getStack().get(0).getList();
+        var backings = new HashMap<String, Long>();
+        for (StackItem elem : result.get(0).getList()) {
+            backings.put(elem.getList().get(0).getString(), elem.getList().get(1).getInteger().longValue());
+        }
+        assertEquals(2, backings.size());
+        assertEquals(10_00, backings.get(identifiers[0]));
+        assertEquals(20_00, backings.get(identifiers[1]));
+        assertNull(result.get(1).getValue());
+    }
+
+    @Test
+    void testQueryProjectSummary() throws Throwable {
+        var identifier = ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 1_00, 1000_00,
+                new String[]{"milestone1", "milestone2"},
+                new String[]{"milestone1", "milestone2"},
+                new Long[]{
+                        System.currentTimeMillis() + 60 * 1000,
+                        System.currentTimeMillis() + 61 * 1000
+                },
+                0, 1, false,
+                "test_query_summary_" + System.currentTimeMillis(),
+                this.creatorAccount
+        );
+        List<StackItem> summary = testInvoke(
+                getWcaContract(),
+                "queryProjectSummary",
+                new ContractParameter[]{ContractParameter.string(identifier)},
+                new Signer[]{}
+        ).getStack().get(0).getList();
+        assertEquals(identifier, summary.get(0).getString());
+        assertEquals(this.creatorAccount.getAddress(), summary.get(1).getAddress());
+        assertEquals(getCatTokenAddress().toAddress(), summary.get(2).getAddress());
+        assertEquals(2, summary.get(5).getInteger().intValue());
+        assertEquals("ONGOING", summary.get(10).getString());
+        assertEquals("Open", summary.get(11).getString());
+    }
+
+    @Test
+    void testBatchQuery() throws Throwable {
+        var buyer = getTestAccount();
+        var identifier = ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 1_00, 1000_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 1, false,
+                "test_batch_query_" + System.currentTimeMillis(),
+                this.creatorAccount
+        );
+        transferToken(getCatToken(), buyer, getWcaContractAddress(), 10_00, identifier, true);
+
+        List<StackItem> purchases = testInvoke(
+                getWcaContract(),
+                "queryPurchases",
+                new ContractParameter[]{
+                        ContractParameter.array(
+                                ContractParameter.string(identifier),
+                                ContractParameter.string(identifier),
+                                ContractParameter.string("some_invalid_id")
+                        ),
+                        ContractParameter.array(
+                                ContractParameter.hash160(buyer),
+                                ContractParameter.hash160(this.creatorAccount),
+                                ContractParameter.hash160(buyer)
+                        )
+                },
+                new Signer[]{}
+        ).getStack().get(0).getList();
+        assertEquals(10_00, purchases.get(0).getInteger().longValue());
+        assertEquals(0, purchases.get(1).getInteger().longValue());
+        assertEquals(0, purchases.get(2).getInteger().longValue());
+
+        List<StackItem> projects = testInvoke(
+                getWcaContract(),
+                "queryProjects",
+                new ContractParameter[]{
+                        ContractParameter.array(
+                                ContractParameter.string(identifier),
+                                ContractParameter.string("some_invalid_id")
+                        )
+                },
+                new Signer[]{}
+        ).getStack().get(0).getList();
+        assertEquals(identifier, projects.get(0).getList().get(0).getString());
+        assertNull(projects.get(1).getValue());
+    }
+
+    @Test
+    void testGetStats() throws Throwable {
+        var oldStats = ContractInvokeHelper.getStats(getWcaContract(), getCatTokenAddress());
+        var identifier = ContractInvokeHelper.createAndPayProject(
+                getWcaContract(), "description",
+                getCatTokenAddress(), 10, 1000_00,
+                new String[]{"milestone1"},
+                new String[]{"milestone1"},
+                new Long[]{System.currentTimeMillis() + 60 * 1000},
+                0, 1, false,
+                "test_get_stats_" + System.currentTimeMillis(),
+                this.creatorAccount
+        );
+        var buyer = getTestAccount();
+        transferToken(getCatToken(), buyer, getWcaContractAddress(), 10_00, identifier, true);
+        var newStats = ContractInvokeHelper.getStats(getWcaContract(), getCatTokenAddress());
+
+        // staked, purchased, refunded, settled
+        assertEquals(100_00, newStats.get(0) - oldStats.get(0));
+        assertEquals(10_00, newStats.get(1) - oldStats.get(1));
+        assertEquals(0, newStats.get(2) - oldStats.get(2));
+        assertEquals(0, newStats.get(3) - oldStats.get(3));
+        // pending, ongoing
+        assertEquals(0, newStats.get(4) - oldStats.get(4));
+        assertEquals(1, newStats.get(5) - oldStats.get(5));
+    }
 }